@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The protocol between the {@link SortDaemon} and the {@link FilterClient}.
+ * Only depends on the JDK, so the client starts without loading JDT.
+ * <p>
+ * A request is the header line <code>&lt;length&gt; &lt;unit name&gt;</code>
+ * followed by the source in <code>length</code> bytes. The response is
+ * either the header line <code>OK &lt;length&gt;</code> followed by the
+ * sorted source or the line <code>ERROR &lt;message&gt;</code>. The sources
+ * are transferred in the encoding the daemon was started with.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+final class DaemonProtocol {
+
+    static final String OK = "OK";
+    static final String ERROR = "ERROR";
+    static final Charset HEADER_CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Larger sources are rejected, so a request cannot exhaust the heap of the
+     * daemon.
+     */
+    static final int MAX_LENGTH = 16 * 1024 * 1024;
+
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    private DaemonProtocol() {
+	// not meant to be instantiated
+    }
+
+    /**
+     * @return the Unix-domain socket the daemon listens on by default
+     */
+    static Path getDefaultSocket() {
+	return Paths.get(System.getProperty("user.home"), ".ccms", "daemon.sock");
+    }
+
+    /**
+     * Reads a header line without buffering beyond it, so the bytes of the
+     * source remain in the stream.
+     *
+     * @param in
+     * @return the line without the line feed
+     * @throws IOException
+     *             if the stream ends before the line feed or the line is too
+     *             long
+     */
+    static String readLine(InputStream in) throws IOException {
+	final ByteArrayOutputStream line = new ByteArrayOutputStream();
+	int b;
+	while ((b = in.read()) != '\n') {
+	    if (b < 0)
+		throw new EOFException("Incomplete header");
+	    if (line.size() == MAX_LINE_LENGTH)
+		throw new IOException("Header too long");
+	    line.write(b);
+	}
+	return new String(line.toByteArray(), HEADER_CHARSET);
+    }
+
+    static byte[] readFully(InputStream in, int length) throws IOException {
+	if (length < 0 || length > MAX_LENGTH)
+	    throw new IOException("Invalid length " + length);
+	final byte[] bytes = new byte[length];
+	int offset = 0;
+	while (offset < length) {
+	    final int read = in.read(bytes, offset, length - offset);
+	    if (read < 0)
+		throw new EOFException("Expected " + length + " bytes but got " + offset);
+	    offset += read;
+	}
+	return bytes;
+    }
+
+}
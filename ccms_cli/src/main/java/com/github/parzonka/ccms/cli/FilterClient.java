@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.cli;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Sorts the source read from stdin by the running {@link SortDaemon} and
+ * writes the result to stdout, so editors can use it as a filter command. If
+ * the source cannot be sorted, the source is written unchanged and the exit
+ * status is 2.
+ * <p>
+ * Usage:
+ * <code>java -cp ccms_cli.jar com.github.parzonka.ccms.cli.FilterClient [-name &lt;file name&gt;] [-socket &lt;path&gt;] &lt; Foo.java</code>
+ * <p>
+ * Loads no JDT classes, so it starts in a fraction of the time the sorter
+ * needs.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class FilterClient {
+
+    private static final int EXIT_FAILED = 2;
+
+    public static void main(String[] args) throws IOException {
+	String unitName = "Filter.java";
+	Path socketFile = DaemonProtocol.getDefaultSocket();
+	for (int i = 0; i < args.length - 1; i += 2) {
+	    if (args[i].equals("-name"))
+		unitName = args[i + 1];
+	    else if (args[i].equals("-socket"))
+		socketFile = Paths.get(args[i + 1]);
+	}
+
+	final byte[] source = readAll(System.in);
+	try {
+	    System.out.write(sort(socketFile, unitName, source));
+	    System.out.flush();
+	} catch (final IOException e) {
+	    System.err.println(e.getMessage());
+	    System.out.write(source);
+	    System.out.flush();
+	    System.exit(EXIT_FAILED);
+	}
+    }
+
+    private static byte[] sort(Path socketFile, String unitName, byte[] source) throws IOException {
+	final SocketChannel channel;
+	try {
+	    channel = SocketChannel.open(UnixDomainSocketAddress.of(socketFile));
+	} catch (final SocketException e) {
+	    throw new IOException("No sort daemon is running, start it with: ccms -daemon", e);
+	}
+	try {
+	    final OutputStream out = Channels.newOutputStream(channel);
+	    out.write((source.length + " " + Paths.get(unitName).getFileName()).getBytes(DaemonProtocol.HEADER_CHARSET));
+	    out.write('\n');
+	    out.write(source);
+	    out.flush();
+
+	    final InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+	    final String header = DaemonProtocol.readLine(in);
+	    if (!header.startsWith(DaemonProtocol.OK + " "))
+		throw new IOException(header);
+	    return DaemonProtocol.readFully(in, Integer.parseInt(header.substring(DaemonProtocol.OK.length() + 1)));
+	} finally {
+	    channel.close();
+	}
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+	final ByteArrayOutputStream result = new ByteArrayOutputStream();
+	final byte[] buffer = new byte[8192];
+	int read;
+	while ((read = in.read(buffer)) >= 0)
+	    result.write(buffer, 0, read);
+	return result.toByteArray();
+    }
+
+}
@@ -0,0 +1,416 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.cli;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.text.edits.TextEdit;
+
+import com.github.parzonka.ccms.preferences.IPreferences;
+import com.github.parzonka.ccms.sorter.CleanCodeMethodSorter;
+import com.github.parzonka.ccms.sorter.UnsortedMember;
+import com.github.parzonka.ccms.sorter.callgraph.ASTUtils;
+
+/**
+ * Sorts the methods of source files without the workspace. The files are
+ * parsed in groups sharing one binding environment, which is created from the
+ * given class and source path. The groups are sorted in parallel, one group per
+ * thread.
+ * <p>
+ * In check mode the files are neither read nor changed. Only the first member
+ * out of order is looked up in the AST of each file, so no rewrite or document
+ * is created. Otherwise the files are read and written through
+ * {@link SourceFiles}, whose buffers are pooled across the threads and
+ * groups. Only files whose contents change are written. A file which was
+ * modified after its group was parsed, up to right before the sorted contents
+ * replace it, is not written but reported as failed, as its edit was
+ * calculated for the previous contents.
+ * <p>
+ * A file whose AST reports an incomplete classpath, e.g. because the types of
+ * the JDK cannot be resolved, fails as well. Its call graph would lack the
+ * invocations involving the missing types, so it would be sorted differently
+ * than with a complete classpath.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class HeadlessSorter implements SortResults {
+
+    private final String[] sourcepath;
+    private final String[] classpath;
+    private final Charset charset;
+    private final Map<String, String> options;
+    private final IPreferences preferences;
+    private final int threads;
+    private final int groupSize;
+    private boolean checkOnly;
+
+    private final List<UnsortedMember> unsortedMembers = Collections
+	    .synchronizedList(new ArrayList<UnsortedMember>());
+    private final Set<Path> unsortedFiles = Collections.synchronizedSet(new HashSet<Path>());
+    private final Set<Path> failedFiles = Collections.synchronizedSet(new HashSet<Path>());
+    private final AtomicInteger sortedCount = new AtomicInteger();
+    private final AtomicInteger unsortedCount = new AtomicInteger();
+    private final AtomicInteger unchangedCount = new AtomicInteger();
+    private final AtomicInteger failedCount = new AtomicInteger();
+    private final Queue<SourceFiles> sourceFilesPool = new ConcurrentLinkedQueue<SourceFiles>();
+
+    /**
+     * @param sourcepath
+     *            the source roots the sources are compiled against
+     * @param classpath
+     *            the jars and class folders the sources are compiled against
+     * @param charset
+     *            the encoding of the sources
+     * @param sourceLevel
+     *            the Java source level, e.g. <code>1.6</code>
+     * @param preferences
+     * @param threads
+     *            the number of groups sorted at once
+     * @param groupSize
+     *            the maximum number of files sharing one binding environment
+     */
+    public HeadlessSorter(String[] sourcepath, String[] classpath, Charset charset, String sourceLevel,
+	    IPreferences preferences, int threads, int groupSize) {
+	this.sourcepath = sourcepath;
+	this.classpath = classpath;
+	this.charset = charset;
+	this.options = JavaCore.getOptions();
+	JavaCore.setComplianceOptions(sourceLevel, this.options);
+	this.preferences = preferences;
+	this.threads = threads;
+	this.groupSize = groupSize;
+    }
+
+    /**
+     * In check mode the files are only checked for members out of order. Must
+     * be set before sorting.
+     *
+     * @param checkOnly
+     */
+    public void setCheckOnly(boolean checkOnly) {
+	this.checkOnly = checkOnly;
+    }
+
+    public boolean isCheckOnly() {
+	return this.checkOnly;
+    }
+
+    /**
+     * @param roots
+     *            source roots or single source files
+     * @return the Java source files in the given roots
+     * @throws IOException
+     */
+    public static List<Path> collectSourceFiles(List<Path> roots) throws IOException {
+	final List<Path> result = new ArrayList<Path>();
+	for (final Path root : roots) {
+	    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+		    if (attributes.isRegularFile() && file.getFileName().toString().endsWith(".java"))
+			result.add(file.toAbsolutePath());
+		    return FileVisitResult.CONTINUE;
+		}
+	    });
+	}
+	return result;
+    }
+
+    /**
+     * Sorts the given files and waits until all of them are sorted.
+     *
+     * @param files
+     * @throws InterruptedException
+     */
+    public void sort(List<Path> files) throws InterruptedException {
+	final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+	try {
+	    for (final List<Path> group : createGroups(files, this.groupSize)) {
+		executor.execute(new Runnable() {
+		    @Override
+		    public void run() {
+			sortGroup(group);
+		    }
+		});
+	    }
+	} finally {
+	    executor.shutdown();
+	}
+	executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Groups the files per directory, so files of one package share the
+     * binding environment.
+     *
+     * @param files
+     * @param groupSize
+     * @return groups of at most groupSize files
+     */
+    static List<List<Path>> createGroups(List<Path> files, int groupSize) {
+	final Map<Path, List<Path>> filesPerDirectory = new LinkedHashMap<Path, List<Path>>();
+	for (final Path file : files) {
+	    List<Path> directory = filesPerDirectory.get(file.getParent());
+	    if (directory == null) {
+		directory = new ArrayList<Path>();
+		filesPerDirectory.put(file.getParent(), directory);
+	    }
+	    directory.add(file);
+	}
+	final List<List<Path>> groups = new ArrayList<List<Path>>();
+	List<Path> group = new ArrayList<Path>();
+	for (final List<Path> directory : filesPerDirectory.values()) {
+	    for (final Path file : directory) {
+		if (group.size() == groupSize) {
+		    groups.add(group);
+		    group = new ArrayList<Path>();
+		}
+		group.add(file);
+	    }
+	}
+	if (!group.isEmpty())
+	    groups.add(group);
+	return groups;
+    }
+
+    private void sortGroup(List<Path> group) {
+	final String[] paths = new String[group.size()];
+	for (int i = 0; i < paths.length; i++)
+	    paths[i] = group.get(i).toString();
+	final String[] encodings = new String[paths.length];
+	Arrays.fill(encodings, this.charset.name());
+
+	final Set<Path> pending = new HashSet<Path>(group);
+	final Map<Path, String> stamps = new HashMap<Path, String>();
+	for (final Path file : group)
+	    stamps.put(file, SourceFiles.getStamp(file));
+	try {
+	    ASTUtils.createASTs(paths, encodings, this.classpath, this.sourcepath, this.options,
+		    new FileASTRequestor() {
+			@Override
+			public void acceptAST(String sourceFilePath, CompilationUnit ast) {
+			    final Path file = Paths.get(sourceFilePath);
+			    pending.remove(file);
+			    sort(file, ast, stamps.get(file));
+			}
+		    }, null);
+	} catch (final RuntimeException e) {
+	    System.err.println("Could not parse " + group.get(0).getParent() + ": " + e);
+	    this.failedCount.addAndGet(pending.size());
+	    this.failedFiles.addAll(pending);
+	}
+    }
+
+    /**
+     * Writes the file only if sorting changes it.
+     *
+     * @param file
+     * @param ast
+     *            the AST created from the contents of the file
+     * @param stamp
+     *            the stamp of the file before the AST was created
+     */
+    private void sort(Path file, CompilationUnit ast, String stamp) {
+	try {
+	    checkClassPath(ast);
+	    if (this.checkOnly) {
+		check(file, ast);
+		return;
+	    }
+	    final SourceFiles sourceFiles = acquireSourceFiles();
+	    try {
+		final String source = sourceFiles.read(file);
+		if (stamp == null || !stamp.equals(SourceFiles.getStamp(file)) || source.length() != ast.getLength())
+		    throw new IOException("Modified while it was sorted");
+		final TextEdit edit = new CleanCodeMethodSorter(this.preferences).calculateEdit(ast, source,
+			this.options);
+		final String sorted = edit == null ? source : apply(edit, source);
+		if (sorted.equals(source)) {
+		    this.unchangedCount.incrementAndGet();
+		    return;
+		}
+		sourceFiles.write(file, sorted, stamp);
+	    } finally {
+		this.sourceFilesPool.add(sourceFiles);
+	    }
+	    this.sortedCount.incrementAndGet();
+	} catch (final IOException e) {
+	    failed(file, e);
+	} catch (final BadLocationException e) {
+	    failed(file, e);
+	} catch (final RuntimeException e) {
+	    failed(file, e);
+	}
+    }
+
+    /**
+     * @param ast
+     * @throws IllegalStateException
+     *             if the AST reports an incomplete classpath
+     */
+    private static void checkClassPath(CompilationUnit ast) {
+	final IProblem problem = ASTUtils.findClassPathProblem(ast);
+	if (problem != null)
+	    throw new IllegalStateException("Incomplete classpath: " + problem.getMessage());
+    }
+
+    private SourceFiles acquireSourceFiles() {
+	final SourceFiles sourceFiles = this.sourceFilesPool.poll();
+	return sourceFiles != null ? sourceFiles : new SourceFiles(this.charset);
+    }
+
+    private static String apply(TextEdit edit, String source) throws BadLocationException {
+	final Document document = new Document(source);
+	edit.apply(document);
+	return document.get();
+    }
+
+    /**
+     * Sorts a source which is not read from a file, e.g. an editor buffer.
+     * Does not update the counters.
+     *
+     * @param source
+     * @param unitName
+     *            the name of the compilation unit, e.g. <code>Foo.java</code>
+     * @return the sorted source, which is the given source if it is sorted
+     *         already
+     * @throws BadLocationException
+     *             if the edit does not match the source
+     * @throws IllegalStateException
+     *             if the classpath is incomplete
+     */
+    public String sort(String source, String unitName) throws BadLocationException {
+	final CompilationUnit ast = ASTUtils.createAST(source.toCharArray(), unitName, this.classpath,
+		this.sourcepath, this.options);
+	checkClassPath(ast);
+	final TextEdit edit = new CleanCodeMethodSorter(this.preferences).calculateEdit(ast, source, this.options);
+	if (edit == null)
+	    return source;
+	return apply(edit, source);
+    }
+
+    private void check(Path file, CompilationUnit ast) {
+	final BodyDeclaration unsorted = new CleanCodeMethodSorter(this.preferences).findFirstUnsorted(ast);
+	if (unsorted == null) {
+	    this.unchangedCount.incrementAndGet();
+	    return;
+	}
+	this.unsortedMembers.add(UnsortedMember.create(getDisplayPath(file), ast, unsorted));
+	this.unsortedFiles.add(file);
+	this.unsortedCount.incrementAndGet();
+    }
+
+    /**
+     * @param file
+     * @return the path relative to the working directory if the file is below
+     *         it
+     */
+    private static String getDisplayPath(Path file) {
+	final Path workingDirectory = Paths.get("").toAbsolutePath();
+	if (file.startsWith(workingDirectory))
+	    return workingDirectory.relativize(file).toString();
+	return file.toString();
+    }
+
+    private void failed(Path file, Exception e) {
+	System.err.println("Could not sort " + file + ": " + e);
+	this.failedCount.incrementAndGet();
+	this.failedFiles.add(file);
+    }
+
+    /**
+     * Clears the counters and the files found unsorted or failed, so the
+     * sorter can be reused for the next files with warm caches.
+     */
+    public void resetResults() {
+	this.unsortedMembers.clear();
+	this.unsortedFiles.clear();
+	this.failedFiles.clear();
+	this.sortedCount.set(0);
+	this.unsortedCount.set(0);
+	this.unchangedCount.set(0);
+	this.failedCount.set(0);
+    }
+
+    /**
+     * @return the first unsorted member of each file found in check mode,
+     *         ordered by path
+     */
+    @Override
+    public List<UnsortedMember> getUnsortedMembers() {
+	final List<UnsortedMember> result = new ArrayList<UnsortedMember>(this.unsortedMembers);
+	Collections.sort(result);
+	return result;
+    }
+
+    /**
+     * @return the files found unsorted in check mode
+     */
+    public Set<Path> getUnsortedFiles() {
+	return new HashSet<Path>(this.unsortedFiles);
+    }
+
+    /**
+     * @return the files which could not be sorted
+     */
+    public Set<Path> getFailedFiles() {
+	return new HashSet<Path>(this.failedFiles);
+    }
+
+    @Override
+    public int getSortedCount() {
+	return this.sortedCount.get();
+    }
+
+    @Override
+    public int getUnsortedCount() {
+	return this.unsortedCount.get();
+    }
+
+    @Override
+    public int getUnchangedCount() {
+	return this.unchangedCount.get();
+    }
+
+    @Override
+    public int getFailedCount() {
+	return this.failedCount.get();
+    }
+
+}
@@ -0,0 +1,303 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.cli;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jdt.core.JavaCore;
+
+import com.github.parzonka.ccms.git.ChangedFiles;
+import com.github.parzonka.ccms.preferences.IPreferences;
+import com.github.parzonka.ccms.preferences.PropertiesPreferences;
+import com.github.parzonka.ccms.sorter.UnsortedMember;
+
+/**
+ * Sorts the methods of a source tree from the command line, so methods can be
+ * sorted without launching Eclipse, e.g. on a CI server. With
+ * <code>-check</code> the files are only verified: the first unsorted member of
+ * each file is printed as <code>&lt;path&gt;:&lt;line&gt;: unsorted: &lt;member&gt;</code>
+ * and the exit status is {@link #EXIT_UNSORTED} if there is one. With
+ * <code>-changed &lt;ref&gt;</code> only the files staged or modified relative
+ * to the ref are parsed, so a pre-commit hook takes time proportional to the
+ * change rather than to the source tree. With <code>-watch</code> the process
+ * keeps running and sorts every file saved below the roots. With
+ * <code>-daemon</code> it keeps running and sorts the sources sent by the
+ * {@link FilterClient}, resolving them against the roots and the classpath.
+ * With <code>-workers &lt;n&gt;</code> the files are sorted by n worker JVMs
+ * coordinated by a {@link SortCoordinator}.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class Main {
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_UNSORTED = 1;
+    static final int EXIT_FAILED = 2;
+
+    private static final String USAGE = "Usage: ccms [options] <source root or file>...\n"
+	    + "  -check              only report unsorted files, exit with 1 if there are any\n"
+	    + "  -changed <ref>      only files staged or modified relative to the ref, e.g. HEAD\n"
+	    + "  -watch              keep running and sort the files whenever they are saved\n"
+	    + "  -daemon             keep running and sort the sources sent by the FilterClient\n"
+	    + "  -cp <path>          jars and class folders the sources are compiled against\n"
+	    + "  -source <level>     the Java source level (default: 1.6)\n"
+	    + "  -encoding <charset> the encoding of the sources (default: platform encoding)\n"
+	    + "  -prefs <file>       the preferences, e.g. the ccms_plugin.prefs of a workspace\n"
+	    + "  -threads <n>        the number of files parsed at once (default: processors)\n"
+	    + "  -group <n>          the files sharing one binding environment (default: 100)\n"
+	    + "  -workers <n>        sort in n worker JVMs, each using one thread\n"
+	    + "  -J<option>          an option of the worker JVMs, e.g. -J-Xmx512m";
+
+    private final List<Path> roots = new ArrayList<Path>();
+    private String[] classpath = new String[0];
+    private String classpathArgument;
+    private String sourceLevel = JavaCore.VERSION_1_6;
+    private Charset charset = Charset.defaultCharset();
+    private IPreferences preferences = new PropertiesPreferences();
+    private File preferencesFile;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int groupSize = 100;
+    private boolean checkOnly;
+    private String changedRef;
+    private boolean watch;
+    private boolean daemon;
+    private int workers;
+    private final List<String> workerOptions = new ArrayList<String>();
+    private boolean worker;
+
+    public static void main(String[] args) {
+	System.exit(new Main().run(args));
+    }
+
+    /**
+     * @param args
+     * @return the exit status
+     */
+    int run(String[] args) {
+	try {
+	    parseArguments(args);
+	} catch (final IllegalArgumentException e) {
+	    System.err.println(e.getMessage());
+	    System.err.println(USAGE);
+	    return EXIT_FAILED;
+	} catch (final IOException e) {
+	    System.err.println(e);
+	    return EXIT_FAILED;
+	}
+
+	final long start = System.currentTimeMillis();
+	try {
+	    if (this.worker) {
+		final PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), false,
+			WorkerProtocol.CHARSET.name());
+		// stdout is reserved for the results
+		System.setOut(System.err);
+		new SortWorker(createSorter()).run(System.in, out);
+		return EXIT_OK;
+	    }
+	    if (this.daemon) {
+		new SortDaemon(createSorter(), this.charset, DaemonProtocol.getDefaultSocket(), this.threads).run();
+		return EXIT_OK;
+	    }
+	    if (this.watch) {
+		new SourceWatcher(createSorter(), this.roots, SourceWatcher.DEFAULT_DEBOUNCE_MILLIS).watch();
+		return EXIT_OK;
+	    }
+	    final List<Path> files = this.changedRef == null ? HeadlessSorter.collectSourceFiles(this.roots)
+		    : collectChangedFiles();
+	    final SortResults results;
+	    if (this.workers > 0) {
+		final SortCoordinator coordinator = new SortCoordinator(getWorkerCommand(), this.workers,
+			this.groupSize);
+		coordinator.sort(files);
+		coordinator.printTimings(System.err);
+		results = coordinator;
+	    } else {
+		final HeadlessSorter sorter = createSorter();
+		sorter.sort(files);
+		results = sorter;
+	    }
+	    if (this.checkOnly)
+		return check(results, files.size(), start);
+	    System.out.println(String.format("Sorted %d, unchanged %d, failed %d of %d files in %d ms",
+		    results.getSortedCount(), results.getUnchangedCount(), results.getFailedCount(), files.size(),
+		    System.currentTimeMillis() - start));
+	    return results.getFailedCount() == 0 ? EXIT_OK : EXIT_FAILED;
+	} catch (final IOException e) {
+	    System.err.println(e);
+	    return EXIT_FAILED;
+	} catch (final IllegalArgumentException e) {
+	    System.err.println(e.getMessage());
+	    return EXIT_FAILED;
+	} catch (final InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    return EXIT_FAILED;
+	}
+    }
+
+    /**
+     * Prints the unsorted members to stdout and the summary to stderr, so the
+     * output can be parsed.
+     *
+     * @return the exit status, failures taking precedence over unsorted files
+     */
+    private static int check(SortResults results, int fileCount, long start) {
+	for (final UnsortedMember unsorted : results.getUnsortedMembers())
+	    System.out.println(unsorted);
+	System.err.println(String.format("Unsorted %d, sorted %d, failed %d of %d files in %d ms",
+		results.getUnsortedCount(), results.getUnchangedCount(), results.getFailedCount(), fileCount,
+		System.currentTimeMillis() - start));
+	if (results.getFailedCount() > 0)
+	    return EXIT_FAILED;
+	return results.getUnsortedCount() > 0 ? EXIT_UNSORTED : EXIT_OK;
+    }
+
+    private HeadlessSorter createSorter() {
+	final HeadlessSorter sorter = new HeadlessSorter(getSourcepath(), this.classpath, this.charset,
+		this.sourceLevel, this.preferences, this.threads, this.groupSize);
+	sorter.setCheckOnly(this.checkOnly);
+	return sorter;
+    }
+
+    private void parseArguments(String[] args) throws IOException {
+	for (int i = 0; i < args.length; i++) {
+	    final String arg = args[i];
+	    if (arg.equals("-check")) {
+		this.checkOnly = true;
+	    } else if (arg.equals("-daemon")) {
+		this.daemon = true;
+	    } else if (arg.equals("-watch")) {
+		this.watch = true;
+	    } else if (arg.equals("-changed")) {
+		this.changedRef = getValue(args, ++i, arg);
+	    } else if (arg.equals("-cp") || arg.equals("-classpath")) {
+		this.classpathArgument = getValue(args, ++i, arg);
+		this.classpath = this.classpathArgument.split(File.pathSeparator);
+	    } else if (arg.equals("-source")) {
+		this.sourceLevel = getValue(args, ++i, arg);
+	    } else if (arg.equals("-encoding")) {
+		this.charset = Charset.forName(getValue(args, ++i, arg));
+	    } else if (arg.equals("-prefs")) {
+		this.preferencesFile = new File(getValue(args, ++i, arg));
+		this.preferences = PropertiesPreferences.load(this.preferencesFile);
+	    } else if (arg.equals("-threads")) {
+		this.threads = getPositiveInt(args, ++i, arg);
+	    } else if (arg.equals("-group")) {
+		this.groupSize = getPositiveInt(args, ++i, arg);
+	    } else if (arg.equals("-workers")) {
+		this.workers = getPositiveInt(args, ++i, arg);
+	    } else if (arg.startsWith("-J") && arg.length() > 2) {
+		this.workerOptions.add(arg.substring(2));
+	    } else if (arg.equals("-worker")) {
+		// started by the SortCoordinator
+		this.worker = true;
+	    } else if (arg.startsWith("-")) {
+		throw new IllegalArgumentException("Unknown option " + arg);
+	    } else {
+		this.roots.add(Paths.get(arg));
+	    }
+	}
+	if (this.roots.isEmpty() && !this.daemon)
+	    throw new IllegalArgumentException("No source root given");
+	if (this.watch && this.changedRef != null)
+	    throw new IllegalArgumentException("-watch cannot be combined with -changed");
+	if (this.workers > 0 && (this.watch || this.daemon))
+	    throw new IllegalArgumentException("-workers cannot be combined with -watch or -daemon");
+    }
+
+    private static String getValue(String[] args, int i, String option) {
+	if (i >= args.length)
+	    throw new IllegalArgumentException("Missing value of " + option);
+	return args[i];
+    }
+
+    private static int getPositiveInt(String[] args, int i, String option) {
+	try {
+	    final int value = Integer.parseInt(getValue(args, i, option));
+	    if (value > 0)
+		return value;
+	} catch (final NumberFormatException e) {
+	    // reported below
+	}
+	throw new IllegalArgumentException("The value of " + option + " has to be a positive number");
+    }
+
+    /**
+     * @return the Java source files in the roots which are staged or modified
+     *         relative to the changed ref
+     * @throws IOException
+     */
+    private List<Path> collectChangedFiles() throws IOException {
+	final Set<Path> result = new LinkedHashSet<Path>();
+	for (final Path root : this.roots) {
+	    for (final File file : ChangedFiles.find(root.toFile(), this.changedRef))
+		result.add(file.toPath().toAbsolutePath());
+	}
+	return new ArrayList<Path>(result);
+    }
+
+    /**
+     * @return the command starting a worker JVM with the options of this
+     *         process, using the JVM and class path of this process
+     */
+    private List<String> getWorkerCommand() {
+	final List<String> command = new ArrayList<String>();
+	command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+	command.addAll(this.workerOptions);
+	command.add("-cp");
+	command.add(System.getProperty("java.class.path"));
+	command.add(Main.class.getName());
+	command.add("-worker");
+	command.add("-threads");
+	command.add("1");
+	if (this.checkOnly)
+	    command.add("-check");
+	if (this.classpathArgument != null) {
+	    command.add("-cp");
+	    command.add(this.classpathArgument);
+	}
+	command.add("-source");
+	command.add(this.sourceLevel);
+	command.add("-encoding");
+	command.add(this.charset.name());
+	if (this.preferencesFile != null) {
+	    command.add("-prefs");
+	    command.add(this.preferencesFile.getAbsolutePath());
+	}
+	for (final Path root : this.roots)
+	    command.add(root.toAbsolutePath().toString());
+	return command;
+    }
+
+    /**
+     * @return the directories among the roots, so the sources can refer to
+     *         each other
+     */
+    private String[] getSourcepath() {
+	final List<String> sourcepath = new ArrayList<String>();
+	for (final Path root : this.roots) {
+	    if (root.toFile().isDirectory())
+		sourcepath.add(root.toAbsolutePath().toString());
+	}
+	return sourcepath.toArray(new String[sourcepath.size()]);
+    }
+
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.parzonka.ccms.sorter.UnsortedMember;
+
+/**
+ * Sorts files in several worker JVMs, so sorting scales with the processors
+ * without one large heap shared by all threads. The files are split into
+ * shards of consecutive packages, the files of one directory staying
+ * together unless the directory exceeds the shard size. A shard is parsed with
+ * one binding environment, so the files of a package resolve each other's
+ * bindings within one worker.
+ * <p>
+ * Every worker is a {@link SortWorker} started with the given command. The
+ * shards are small enough for several per worker and are streamed to the
+ * workers on demand, so a worker which finishes early takes over the remaining
+ * shards. If a worker terminates, the files of its current shard are counted
+ * as failed and the other workers continue.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class SortCoordinator implements SortResults {
+
+    private static final int SHARDS_PER_WORKER = 4;
+
+    private final List<String> workerCommand;
+    private final int workers;
+    private final int shardSize;
+
+    private final Queue<List<Path>> shards = new ConcurrentLinkedQueue<List<Path>>();
+    private final List<UnsortedMember> unsortedMembers = Collections
+	    .synchronizedList(new ArrayList<UnsortedMember>());
+    private final AtomicInteger sortedCount = new AtomicInteger();
+    private final AtomicInteger unsortedCount = new AtomicInteger();
+    private final AtomicInteger unchangedCount = new AtomicInteger();
+    private final AtomicInteger failedCount = new AtomicInteger();
+    private final List<WorkerReport> reports = new ArrayList<WorkerReport>();
+
+    /**
+     * @param workerCommand
+     *            the command starting a JVM running a {@link SortWorker}
+     * @param workers
+     *            the number of worker JVMs
+     * @param shardSize
+     *            the maximum number of files of a shard, which are parsed with
+     *            one binding environment
+     */
+    public SortCoordinator(List<String> workerCommand, int workers, int shardSize) {
+	this.workerCommand = workerCommand;
+	this.workers = workers;
+	this.shardSize = shardSize;
+    }
+
+    /**
+     * Sorts the given files and waits until all workers have terminated.
+     *
+     * @param files
+     * @throws InterruptedException
+     */
+    public void sort(List<Path> files) throws InterruptedException {
+	final int balancedSize = (files.size() + this.workers * SHARDS_PER_WORKER - 1)
+		/ (this.workers * SHARDS_PER_WORKER);
+	final List<List<Path>> groups = HeadlessSorter.createGroups(files,
+		Math.max(1, Math.min(this.shardSize, balancedSize)));
+	this.shards.addAll(groups);
+
+	final List<Thread> threads = new ArrayList<Thread>();
+	for (int i = 0; i < Math.min(this.workers, groups.size()); i++) {
+	    final WorkerReport report = new WorkerReport(i + 1);
+	    this.reports.add(report);
+	    final Thread thread = new Thread("ccms worker " + report.number) {
+		@Override
+		public void run() {
+		    drive(report);
+		}
+	    };
+	    thread.start();
+	    threads.add(thread);
+	}
+	for (final Thread thread : threads)
+	    thread.join();
+
+	// left over if all workers terminated
+	List<Path> shard;
+	while ((shard = this.shards.poll()) != null)
+	    this.failedCount.addAndGet(shard.size());
+    }
+
+    /**
+     * Starts a worker and feeds it shards until there are none left.
+     *
+     * @param report
+     *            collects the timings of the worker
+     */
+    private void drive(WorkerReport report) {
+	final long start = System.currentTimeMillis();
+	final Process process;
+	try {
+	    process = new ProcessBuilder(this.workerCommand).redirectError(Redirect.INHERIT).start();
+	} catch (final IOException e) {
+	    System.err.println("Could not start worker " + report.number + ": " + e);
+	    return;
+	}
+	List<Path> shard = null;
+	try {
+	    final Writer out = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(),
+		    WorkerProtocol.CHARSET));
+	    final BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(),
+		    WorkerProtocol.CHARSET));
+	    while ((shard = this.shards.poll()) != null) {
+		for (final Path file : shard)
+		    out.write(file.toString() + "\n");
+		out.write("\n");
+		out.flush();
+		readResults(in, report);
+		report.shards++;
+		report.files += shard.size();
+	    }
+	    out.close();
+	    final int status = process.waitFor();
+	    if (status != 0)
+		System.err.println("Worker " + report.number + " exited with status " + status);
+	} catch (final IOException e) {
+	    workerFailed(report, shard, e);
+	    process.destroy();
+	} catch (final InterruptedException e) {
+	    workerFailed(report, shard, e);
+	    process.destroy();
+	    Thread.currentThread().interrupt();
+	}
+	report.totalMillis = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Reads the results of one shard.
+     *
+     * @throws IOException
+     *             if the worker terminated or sent a malformed line
+     */
+    private void readResults(BufferedReader in, WorkerReport report) throws IOException {
+	String line;
+	while ((line = in.readLine()) != null) {
+	    final String[] fields = line.split(WorkerProtocol.SEPARATOR);
+	    try {
+		if (fields[0].equals(WorkerProtocol.UNSORTED) && fields.length == 4) {
+		    this.unsortedMembers.add(new UnsortedMember(fields[1], Integer.parseInt(fields[2]), fields[3]));
+		    continue;
+		}
+		if (fields[0].equals(WorkerProtocol.DONE) && fields.length == 6) {
+		    this.sortedCount.addAndGet(Integer.parseInt(fields[1]));
+		    this.unsortedCount.addAndGet(Integer.parseInt(fields[2]));
+		    this.unchangedCount.addAndGet(Integer.parseInt(fields[3]));
+		    this.failedCount.addAndGet(Integer.parseInt(fields[4]));
+		    report.sortMillis += Long.parseLong(fields[5]);
+		    return;
+		}
+	    } catch (final NumberFormatException e) {
+		// reported below
+	    }
+	    throw new IOException("Unexpected output: " + line);
+	}
+	throw new IOException("Worker terminated");
+    }
+
+    private void workerFailed(WorkerReport report, List<Path> shard, Exception e) {
+	System.err.println("Worker " + report.number + " failed: " + e);
+	if (shard != null)
+	    this.failedCount.addAndGet(shard.size());
+    }
+
+    /**
+     * Prints the shards, files and times of each worker. The sort time
+     * excludes the start-up of the JVM and the transfer of the shards.
+     *
+     * @param out
+     */
+    public void printTimings(PrintStream out) {
+	for (final WorkerReport report : this.reports)
+	    out.println(String.format("Worker %d: %d shards, %d files, sorting %d ms of %d ms", report.number,
+		    report.shards, report.files, report.sortMillis, report.totalMillis));
+    }
+
+    @Override
+    public List<UnsortedMember> getUnsortedMembers() {
+	final List<UnsortedMember> result = new ArrayList<UnsortedMember>(this.unsortedMembers);
+	Collections.sort(result);
+	return result;
+    }
+
+    @Override
+    public int getSortedCount() {
+	return this.sortedCount.get();
+    }
+
+    @Override
+    public int getUnsortedCount() {
+	return this.unsortedCount.get();
+    }
+
+    @Override
+    public int getUnchangedCount() {
+	return this.unchangedCount.get();
+    }
+
+    @Override
+    public int getFailedCount() {
+	return this.failedCount.get();
+    }
+
+    /**
+     * Written by the thread driving the worker only, read after it
+     * terminated.
+     */
+    private static class WorkerReport {
+
+	private final int number;
+	private int shards;
+	private int files;
+	private long sortMillis;
+	private long totalMillis;
+
+	WorkerReport(int number) {
+	    this.number = number;
+	}
+
+    }
+
+}
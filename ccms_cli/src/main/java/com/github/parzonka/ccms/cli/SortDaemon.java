@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a sorter running so editors can sort a buffer at formatter speed: the
+ * JVM, the JDT classes and the JIT-compiled sorting code stay warm between
+ * requests, which are sent by the {@link FilterClient}.
+ * <p>
+ * The daemon listens on a Unix-domain socket in a directory accessible by the
+ * user only, so no other user can send requests. See {@link DaemonProtocol}
+ * for the format.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class SortDaemon {
+
+    private static final int SO_TIMEOUT_MILLIS = 30000;
+    private static final String WARM_UP_SOURCE = "class WarmUp { void a() { b(); } void c() { } void b() { c(); } }";
+
+    private final HeadlessSorter sorter;
+    private final Charset charset;
+    private final Path socketFile;
+    private final int threads;
+    private volatile Object socketKey;
+
+    /**
+     * @param sorter
+     *            sorts the sources of all requests
+     * @param charset
+     *            the encoding of the sources sent by the clients
+     * @param socketFile
+     *            the path of the socket the daemon listens on
+     * @param threads
+     *            the number of requests served at once
+     */
+    public SortDaemon(HeadlessSorter sorter, Charset charset, Path socketFile, int threads) {
+	this.sorter = sorter;
+	this.charset = charset;
+	this.socketFile = socketFile.toAbsolutePath();
+	this.threads = threads;
+    }
+
+    /**
+     * Serves requests until the process is stopped.
+     *
+     * @throws IOException
+     */
+    public void run() throws IOException {
+	createPrivateDirectory(this.socketFile.getParent());
+	deleteStaleSocket();
+	final ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+	final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+	final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+	    @Override
+	    public Thread newThread(Runnable runnable) {
+		final Thread thread = new Thread(runnable, "ccms-daemon-timeout");
+		thread.setDaemon(true);
+		return thread;
+	    }
+	});
+	try {
+	    warmUp();
+	    server.bind(UnixDomainSocketAddress.of(this.socketFile));
+	    this.socketKey = getFileKey();
+	    if (isPosix())
+		Files.setPosixFilePermissions(this.socketFile, PosixFilePermissions.fromString("rw-------"));
+	    Runtime.getRuntime().addShutdownHook(new Thread() {
+		@Override
+		public void run() {
+		    deleteSocket();
+		}
+	    });
+	    System.err.println("Sort daemon listening on " + this.socketFile);
+	    while (true) {
+		final SocketChannel channel = server.accept();
+		executor.execute(new Runnable() {
+		    @Override
+		    public void run() {
+			serve(channel, timer);
+		    }
+		});
+	    }
+	} finally {
+	    executor.shutdownNow();
+	    timer.shutdownNow();
+	    server.close();
+	    deleteSocket();
+	}
+    }
+
+    private void warmUp() {
+	try {
+	    this.sorter.sort(WARM_UP_SOURCE, "WarmUp.java");
+	} catch (final Exception e) {
+	    System.err.println("Could not warm up the sorter: " + e);
+	}
+    }
+
+    private static boolean isPosix() {
+	return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    }
+
+    /**
+     * Creates the directory of the socket accessible by the user only, or
+     * restricts it if it exists, so no other user can connect before the
+     * permissions of the socket itself are set.
+     *
+     * @param directory
+     * @throws IOException
+     */
+    private static void createPrivateDirectory(Path directory) throws IOException {
+	Files.createDirectories(directory);
+	if (isPosix())
+	    Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+    }
+
+    /**
+     * Deletes a socket left behind by a daemon which was killed.
+     *
+     * @throws IOException
+     *             if another daemon is listening on the socket
+     */
+    private void deleteStaleSocket() throws IOException {
+	if (!Files.exists(this.socketFile))
+	    return;
+	try {
+	    SocketChannel.open(UnixDomainSocketAddress.of(this.socketFile)).close();
+	} catch (final IOException e) {
+	    Files.delete(this.socketFile);
+	    return;
+	}
+	throw new IOException("A sort daemon is already listening on " + this.socketFile);
+    }
+
+    private Object getFileKey() throws IOException {
+	return Files.readAttributes(this.socketFile, BasicFileAttributes.class).fileKey();
+    }
+
+    /**
+     * Deletes the socket unless another daemon has replaced it.
+     */
+    private void deleteSocket() {
+	try {
+	    if (this.socketKey != null && Files.exists(this.socketFile) && this.socketKey.equals(getFileKey()))
+		Files.delete(this.socketFile);
+	} catch (final IOException e) {
+	    // left behind, the next daemon deletes it
+	}
+    }
+
+    /**
+     * Unix-domain channels have no read timeout, so a client which stops
+     * sending is disconnected by the timer.
+     *
+     * @param channel
+     * @param timer
+     */
+    private void serve(final SocketChannel channel, ScheduledExecutorService timer) {
+	final ScheduledFuture<?> timeout = timer.schedule(new Runnable() {
+	    @Override
+	    public void run() {
+		close(channel);
+	    }
+	}, SO_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	try {
+	    final InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+	    final OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+	    try {
+		final byte[] response = respond(in);
+		out.write(response);
+	    } catch (final Exception e) {
+		out.write((DaemonProtocol.ERROR + " " + e + "\n").getBytes(DaemonProtocol.HEADER_CHARSET));
+	    }
+	    out.flush();
+	} catch (final IOException e) {
+	    // the client went away
+	} finally {
+	    timeout.cancel(false);
+	    close(channel);
+	}
+    }
+
+    private static void close(SocketChannel channel) {
+	try {
+	    channel.close();
+	} catch (final IOException e) {
+	    // closed anyway
+	}
+    }
+
+    /**
+     * @param in
+     * @return the response header and the sorted source
+     * @throws Exception
+     *             if the request is invalid or the source cannot be sorted
+     */
+    private byte[] respond(InputStream in) throws Exception {
+	final String[] header = DaemonProtocol.readLine(in).split(" ", 2);
+	if (header.length != 2)
+	    throw new IllegalArgumentException("Invalid header");
+	final byte[] source = DaemonProtocol.readFully(in, Integer.parseInt(header[0]));
+	final byte[] sorted = this.sorter.sort(new String(source, this.charset), header[1]).getBytes(this.charset);
+	final byte[] head = (DaemonProtocol.OK + " " + sorted.length + "\n").getBytes(DaemonProtocol.HEADER_CHARSET);
+	final byte[] response = new byte[head.length + sorted.length];
+	System.arraycopy(head, 0, response, 0, head.length);
+	System.arraycopy(sorted, 0, response, head.length, sorted.length);
+	return response;
+    }
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.cli;
+
+import java.util.List;
+
+import com.github.parzonka.ccms.sorter.UnsortedMember;
+
+/**
+ * The outcome of sorting a set of files, in one JVM or in several.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public interface SortResults {
+
+    /**
+     * @return the first unsorted member of each file found in check mode,
+     *         ordered by path
+     */
+    List<UnsortedMember> getUnsortedMembers();
+
+    /**
+     * @return the number of files which were reordered and written
+     */
+    int getSortedCount();
+
+    /**
+     * @return the number of files found out of order in check mode
+     */
+    int getUnsortedCount();
+
+    /**
+     * @return the number of files which were sorted already
+     */
+    int getUnchangedCount();
+
+    int getFailedCount();
+
+}
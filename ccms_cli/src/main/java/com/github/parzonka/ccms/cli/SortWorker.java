@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.parzonka.ccms.sorter.UnsortedMember;
+
+/**
+ * Sorts the shards assigned by a {@link SortCoordinator}, reading them from
+ * stdin and reporting the results on stdout as described in
+ * {@link WorkerProtocol}. Runs in a JVM of its own, so its binding
+ * environments and garbage collection do not compete with the other workers.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class SortWorker {
+
+    private final HeadlessSorter sorter;
+
+    /**
+     * @param sorter
+     *            the sorter reused for every shard
+     */
+    public SortWorker(HeadlessSorter sorter) {
+	this.sorter = sorter;
+    }
+
+    /**
+     * Sorts shards until the input ends.
+     *
+     * @param in
+     *            the shards
+     * @param out
+     *            the results, which must not be written to by anyone else
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void run(InputStream in, PrintStream out) throws IOException, InterruptedException {
+	final BufferedReader reader = new BufferedReader(new InputStreamReader(in, WorkerProtocol.CHARSET));
+	final List<Path> shard = new ArrayList<Path>();
+	String line;
+	while ((line = reader.readLine()) != null) {
+	    if (line.isEmpty()) {
+		sortShard(shard, out);
+		shard.clear();
+	    } else {
+		shard.add(Paths.get(line));
+	    }
+	}
+    }
+
+    private void sortShard(List<Path> shard, PrintStream out) throws InterruptedException {
+	final long start = System.currentTimeMillis();
+	this.sorter.resetResults();
+	this.sorter.sort(shard);
+	for (final UnsortedMember unsorted : this.sorter.getUnsortedMembers())
+	    out.println(WorkerProtocol.UNSORTED + WorkerProtocol.SEPARATOR + unsorted.getPath()
+		    + WorkerProtocol.SEPARATOR + unsorted.getLine() + WorkerProtocol.SEPARATOR + unsorted.getMember());
+	out.println(WorkerProtocol.DONE + WorkerProtocol.SEPARATOR + this.sorter.getSortedCount()
+		+ WorkerProtocol.SEPARATOR + this.sorter.getUnsortedCount() + WorkerProtocol.SEPARATOR
+		+ this.sorter.getUnchangedCount() + WorkerProtocol.SEPARATOR
+		+ this.sorter.getFailedCount() + WorkerProtocol.SEPARATOR + (System.currentTimeMillis() - start));
+	out.flush();
+    }
+
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Reads and writes source files with as little copying and allocation as
+ * possible, so sorting hundreds of thousands of files does not churn the
+ * heap. Small files are read into a direct buffer which is reused for every
+ * file, large files are memory mapped. The bytes are decoded by a reused
+ * decoder into a reused char array, from which the source string is the only
+ * copy.
+ * <p>
+ * Malformed input is reported rather than replaced, so a file which cannot be
+ * decoded without loss is never written back. Not thread-safe: the
+ * {@link HeadlessSorter} keeps a pool of instances, one per thread sorting.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+final class SourceFiles {
+
+    /**
+     * Larger files are memory mapped instead of being read into the buffer.
+     */
+    static final int MAP_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Larger buffers are allocated for one file only, so a single huge file
+     * does not pin its buffers for the rest of the run.
+     */
+    private static final int MAX_POOLED_SIZE = 4 * 1024 * 1024;
+    private static final int INITIAL_SIZE = 64 * 1024;
+
+    private final CharsetDecoder decoder;
+    private final CharsetEncoder encoder;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_SIZE);
+    private char[] chars = new char[INITIAL_SIZE];
+
+    SourceFiles(Charset charset) {
+	this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+		.onUnmappableCharacter(CodingErrorAction.REPORT);
+	this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPORT)
+		.onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    /**
+     * @param file
+     * @return the decoded contents of the file
+     * @throws IOException
+     *             if the file cannot be read or decoded
+     */
+    String read(Path file) throws IOException {
+	final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+	try {
+	    final long size = channel.size();
+	    if (size > Integer.MAX_VALUE)
+		throw new IOException("File too large: " + size + " bytes");
+	    if (size > MAP_THRESHOLD)
+		return decode(channel.map(MapMode.READ_ONLY, 0, size));
+	    final ByteBuffer bytes = getBuffer((int) size);
+	    while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+		// until the buffer is full or the file ends early
+	    }
+	    bytes.flip();
+	    return decode(bytes);
+	} finally {
+	    channel.close();
+	}
+    }
+
+    /**
+     * @param file
+     * @return the size and modification time of the file, or null if it is
+     *         not a regular file
+     */
+    static String getStamp(Path file) {
+	try {
+	    final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+	    if (!attributes.isRegularFile())
+		return null;
+	    return attributes.size() + "@" + attributes.lastModifiedTime().toMillis();
+	} catch (final IOException e) {
+	    return null;
+	}
+    }
+
+    private String decode(ByteBuffer bytes) throws CharacterCodingException {
+	final int capacity = (int) Math.ceil(bytes.remaining() * (double) this.decoder.maxCharsPerByte());
+	final char[] array = capacity <= this.chars.length ? this.chars : allocateChars(capacity);
+	final CharBuffer out = CharBuffer.wrap(array, 0, capacity);
+	this.decoder.reset();
+	check(this.decoder.decode(bytes, out, true));
+	check(this.decoder.flush(out));
+	return new String(array, 0, out.position());
+    }
+
+    /**
+     * Writes the source to a temporary file next to the file and moves it over
+     * the file, so readers never see a partially written file. The temporary
+     * file takes over the permissions of the file. The stamp is compared right
+     * before the move, so a save since the file was read is not overwritten.
+     *
+     * @param file
+     * @param source
+     * @param stamp
+     *            the stamp of the file when it was read
+     * @throws IOException
+     *             if the file cannot be written, the source cannot be encoded
+     *             or the file was modified since it was read
+     */
+    void write(Path file, String source, String stamp) throws IOException {
+	final ByteBuffer bytes = encode(source);
+	final Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(),
+		".tmp");
+	try {
+	    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+		Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(file));
+	    final FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+	    try {
+		while (bytes.hasRemaining())
+		    channel.write(bytes);
+	    } finally {
+		channel.close();
+	    }
+	    if (!stamp.equals(getStamp(file)))
+		throw new IOException("Modified while it was sorted");
+	    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	} finally {
+	    Files.deleteIfExists(temp);
+	}
+    }
+
+    private ByteBuffer encode(String source) throws CharacterCodingException {
+	final ByteBuffer bytes = getBuffer((int) Math.min(Integer.MAX_VALUE,
+		(long) Math.ceil(source.length() * (double) this.encoder.maxBytesPerChar())));
+	this.encoder.reset();
+	check(this.encoder.encode(CharBuffer.wrap(source), bytes, true));
+	check(this.encoder.flush(bytes));
+	bytes.flip();
+	return bytes;
+    }
+
+    /**
+     * @param size
+     * @return the pooled buffer, cleared and limited to the given size, or a
+     *         new heap buffer if the size exceeds the pooled size
+     */
+    private ByteBuffer getBuffer(int size) {
+	if (size > MAX_POOLED_SIZE)
+	    return ByteBuffer.allocate(size);
+	if (size > this.buffer.capacity())
+	    this.buffer = ByteBuffer.allocateDirect(Math.min(MAX_POOLED_SIZE,
+		    Math.max(size, 2 * this.buffer.capacity())));
+	this.buffer.clear();
+	this.buffer.limit(size);
+	return this.buffer;
+    }
+
+    private char[] allocateChars(int size) {
+	if (size > MAX_POOLED_SIZE)
+	    return new char[size];
+	this.chars = new char[Math.min(MAX_POOLED_SIZE, Math.max(size, 2 * this.chars.length))];
+	return this.chars;
+    }
+
+    /**
+     * @param result
+     * @throws CharacterCodingException
+     *             if the result is an error, an overflow cannot happen as the
+     *             buffers are sized for the worst case
+     */
+    private static void check(CoderResult result) throws CharacterCodingException {
+	if (!result.isUnderflow())
+	    result.throwException();
+    }
+
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.cli;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.github.parzonka.ccms.sorter.UnsortedMember;
+
+/**
+ * Sorts source files whenever they are saved, until the process is stopped.
+ * The source roots are watched by a {@link WatchService}. Events arriving
+ * within the debounce interval of each other are coalesced, so a burst of
+ * saves, e.g. by a refactoring or a branch switch, is sorted as one batch.
+ * <p>
+ * The sorter is created once, so the JVM and JDT stay warm between events and
+ * a single save is sorted in milliseconds. Files whose size and modification
+ * time have not changed since they were last processed are skipped, which
+ * includes the files written by the sorter itself.
+ * <p>
+ * Directory roots are watched with their subdirectories. For a single file
+ * only its parent directory is watched, and only events for that file are
+ * processed. Directories which vanish before they are registered are skipped.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class SourceWatcher {
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 100;
+
+    private final HeadlessSorter sorter;
+    private final List<Path> roots = new ArrayList<Path>();
+    private final long debounceMillis;
+    private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+    private final Map<Path, String> stamps = new HashMap<Path, String>();
+
+    /**
+     * @param sorter
+     *            the sorter reused for every batch
+     * @param roots
+     *            source roots or single source files
+     * @param debounceMillis
+     *            the quiet time after which the touched files are sorted
+     */
+    public SourceWatcher(HeadlessSorter sorter, List<Path> roots, long debounceMillis) {
+	this.sorter = sorter;
+	for (final Path root : roots)
+	    this.roots.add(root.toAbsolutePath());
+	this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Watches the roots until the thread is interrupted.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void watch() throws IOException, InterruptedException {
+	final WatchService watchService = FileSystems.getDefault().newWatchService();
+	try {
+	    for (final Path root : this.roots) {
+		if (Files.isDirectory(root))
+		    register(watchService, root);
+		else
+		    registerDirectory(watchService, root.getParent());
+	    }
+	    warmUp();
+	    System.err.println("Watching " + this.roots.size() + " roots, press Ctrl-C to stop");
+	    while (true) {
+		WatchKey key = watchService.take();
+		final Set<Path> touched = new LinkedHashSet<Path>();
+		do {
+		    collect(watchService, key, touched);
+		    key = watchService.poll(this.debounceMillis, TimeUnit.MILLISECONDS);
+		} while (key != null);
+		sort(touched);
+	    }
+	} finally {
+	    watchService.close();
+	}
+    }
+
+    /**
+     * Registers the directory and its subdirectories. Directories deleted
+     * meanwhile are skipped.
+     *
+     * @param watchService
+     * @param directory
+     * @throws IOException
+     */
+    private void register(final WatchService watchService, Path directory) throws IOException {
+	Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+	    @Override
+	    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+		return registerDirectory(watchService, dir) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+	    }
+
+	    @Override
+	    public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+		if (e instanceof NoSuchFileException)
+		    return FileVisitResult.CONTINUE;
+		throw e;
+	    }
+	});
+    }
+
+    /**
+     * Registers only the directory, not its subdirectories.
+     *
+     * @param watchService
+     * @param directory
+     * @return false if the directory was deleted meanwhile
+     * @throws IOException
+     */
+    private boolean registerDirectory(WatchService watchService, Path directory) throws IOException {
+	try {
+	    this.directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), directory);
+	    return true;
+	} catch (final NoSuchFileException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Records the current state of the source files, and checks one of them
+     * so the parser and the analysis are loaded before the first save.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void warmUp() throws IOException, InterruptedException {
+	final List<Path> files = HeadlessSorter.collectSourceFiles(this.roots);
+	for (final Path file : files)
+	    this.stamps.put(file, SourceFiles.getStamp(file));
+	if (files.isEmpty())
+	    return;
+	final boolean checkOnly = this.sorter.isCheckOnly();
+	this.sorter.setCheckOnly(true);
+	try {
+	    this.sorter.sort(files.subList(0, 1));
+	} finally {
+	    this.sorter.setCheckOnly(checkOnly);
+	}
+    }
+
+    /**
+     * Adds the source files touched according to the events of the key.
+     * Directories created are registered and their source files added. All
+     * source files are added if events were lost.
+     *
+     * @param watchService
+     * @param key
+     * @param touched
+     * @throws IOException
+     */
+    private void collect(WatchService watchService, WatchKey key, Set<Path> touched) throws IOException {
+	final Path directory = this.directories.get(key);
+	for (final WatchEvent<?> event : key.pollEvents()) {
+	    if (event.kind() == OVERFLOW) {
+		touched.addAll(HeadlessSorter.collectSourceFiles(this.roots));
+		continue;
+	    }
+	    if (directory == null)
+		continue;
+	    final Path path = directory.resolve((Path) event.context());
+	    if (!isInRoots(path))
+		continue;
+	    if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+		register(watchService, path);
+		touched.addAll(collectSourceFiles(path));
+	    } else if (path.getFileName().toString().endsWith(".java")) {
+		touched.add(path);
+	    }
+	}
+	if (!key.reset())
+	    this.directories.remove(key);
+    }
+
+    /**
+     * @param directory
+     * @return the source files in the directory, none if it was deleted
+     *         meanwhile
+     * @throws IOException
+     */
+    private static List<Path> collectSourceFiles(Path directory) throws IOException {
+	try {
+	    return HeadlessSorter.collectSourceFiles(Collections.singletonList(directory));
+	} catch (final NoSuchFileException e) {
+	    return Collections.emptyList();
+	}
+    }
+
+    private boolean isInRoots(Path path) {
+	for (final Path root : this.roots) {
+	    if (path.startsWith(root))
+		return true;
+	}
+	return false;
+    }
+
+    /**
+     * Sorts the touched files which changed since they were processed last.
+     *
+     * @param touched
+     * @throws InterruptedException
+     */
+    private void sort(Set<Path> touched) throws InterruptedException {
+	final List<Path> files = new ArrayList<Path>();
+	for (final Path file : touched) {
+	    final String stamp = SourceFiles.getStamp(file);
+	    if (stamp != null && !stamp.equals(this.stamps.get(file)))
+		files.add(file);
+	}
+	if (files.isEmpty())
+	    return;
+
+	final long start = System.currentTimeMillis();
+	this.sorter.resetResults();
+	this.sorter.sort(files);
+	for (final UnsortedMember unsorted : this.sorter.getUnsortedMembers())
+	    System.out.println(unsorted);
+	final Set<Path> failed = this.sorter.getFailedFiles();
+	for (final Path file : files) {
+	    if (!failed.contains(file))
+		this.stamps.put(file, SourceFiles.getStamp(file));
+	}
+	System.err.println(String.format("%tT %s %d, unchanged %d, failed %d files in %d ms", new Date(),
+		this.sorter.isCheckOnly() ? "unsorted" : "sorted",
+		this.sorter.isCheckOnly() ? this.sorter.getUnsortedCount() : this.sorter.getSortedCount(),
+		this.sorter.getUnchangedCount(), this.sorter.getFailedCount(), System.currentTimeMillis() - start));
+    }
+
+}
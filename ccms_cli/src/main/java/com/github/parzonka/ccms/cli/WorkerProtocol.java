@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.cli;
+
+import java.nio.charset.Charset;
+
+/**
+ * The protocol between the {@link SortCoordinator} and its {@link SortWorker}
+ * processes, spoken over the standard streams of the workers.
+ * <p>
+ * The coordinator writes a shard as the absolute paths of its files, one per
+ * line, followed by an empty line, and closes the stream when there are no
+ * more shards. For every shard the worker answers with a line
+ * <code>UNSORTED &lt;path&gt; &lt;line&gt; &lt;member&gt;</code> per unsorted
+ * member found in check mode, followed by the line
+ * <code>DONE &lt;sorted&gt; &lt;unsorted&gt; &lt;unchanged&gt; &lt;failed&gt; &lt;millis&gt;</code>.
+ * The fields are separated by tabs.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+final class WorkerProtocol {
+
+    static final String UNSORTED = "UNSORTED";
+    static final String DONE = "DONE";
+    static final String SEPARATOR = "\t";
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private WorkerProtocol() {
+	// not meant to be instantiated
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.sorter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jface.text.Document;
+import org.eclipse.text.edits.TextEdit;
+import org.junit.Test;
+
+import com.github.parzonka.ccms.preferences.PropertiesPreferences;
+import com.github.parzonka.ccms.sorter.callgraph.ASTUtils;
+
+/**
+ * Checks that the check mode and the rewrite agree: a source is reported
+ * unsorted by {@link CleanCodeMethodSorter#findFirstUnsorted(CompilationUnit)}
+ * exactly if the edit of
+ * {@link CleanCodeMethodSorter#calculateEdit(CompilationUnit, String, Map)}
+ * changes it. A source with a malformed declaration fails both instead of
+ * being reported sorted.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class CleanCodeMethodSorterTest {
+
+    private static final String SORTED = "public class Foo {\n" //
+	    + "    public String entry() {\n" //
+	    + "        return helper(\"x\");\n" //
+	    + "    }\n" //
+	    + "    private String helper(String value) {\n" //
+	    + "        return value.trim();\n" //
+	    + "    }\n" //
+	    + "}\n";
+
+    private static final String UNSORTED = "public class Foo {\n" //
+	    + "    private String helper(String value) {\n" //
+	    + "        return value.trim();\n" //
+	    + "    }\n" //
+	    + "    public String entry() {\n" //
+	    + "        return helper(\"x\");\n" //
+	    + "    }\n" //
+	    + "}\n";
+
+    private static final String INNER = "public class Foo {\n" //
+	    + "    public void run() {\n" //
+	    + "    }\n" //
+	    + "    static class Inner {\n" //
+	    + "        private void helper() {\n" //
+	    + "        }\n" //
+	    + "        public void entry() {\n" //
+	    + "            helper();\n" //
+	    + "        }\n" //
+	    + "    }\n" //
+	    + "}\n";
+
+    private static final String ANONYMOUS = "public class Foo {\n" //
+	    + "    public Runnable create() {\n" //
+	    + "        return new Runnable() {\n" //
+	    + "            private void helper() {\n" //
+	    + "            }\n" //
+	    + "            public void run() {\n" //
+	    + "                helper();\n" //
+	    + "            }\n" //
+	    + "        };\n" //
+	    + "    }\n" //
+	    + "}\n";
+
+    private static final String LAMBDA = "public class Foo {\n" //
+	    + "    private void helper() {\n" //
+	    + "    }\n" //
+	    + "    public void entry() {\n" //
+	    + "        Runnable r = () -> {};\n" //
+	    + "        helper();\n" //
+	    + "    }\n" //
+	    + "}\n";
+
+    private static final String MALFORMED = "public class Foo {\n" //
+	    + "    private void helper() {\n" //
+	    + "    }\n" //
+	    + "    public void entry() {\n" //
+	    + "        helper(;\n" //
+	    + "    }\n" //
+	    + "}\n";
+
+    @Test
+    public void sortedSourceIsNeitherReportedNorChanged() throws Exception {
+	assertNull(findFirstUnsorted(SORTED));
+	assertEquals(SORTED, sort(SORTED));
+    }
+
+    @Test
+    public void unsortedSourceIsReportedAndChanged() throws Exception {
+	assertNotNull(findFirstUnsorted(UNSORTED));
+	assertEquals(SORTED, sort(UNSORTED));
+    }
+
+    @Test
+    public void memberTypeIsReportedIfChanged() throws Exception {
+	assertAgree(INNER);
+    }
+
+    @Test
+    public void anonymousClassIsReportedIfChanged() throws Exception {
+	assertAgree(ANONYMOUS);
+    }
+
+    @Test
+    public void sourceWithLambdaIsReportedAndChanged() throws Exception {
+	assertNotNull(findFirstUnsorted(LAMBDA));
+	assertAgree(LAMBDA);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void malformedSourceIsNotReportedSorted() {
+	findFirstUnsorted(MALFORMED);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void malformedSourceIsNotSorted() throws Exception {
+	sort(MALFORMED);
+    }
+
+    @Test
+    public void editIfUnsortedIsCalculatedOnlyForUnsortedSource() throws Exception {
+	assertNull(createSorter().calculateEditIfUnsorted(createAST(SORTED), SORTED, getOptions()));
+	final TextEdit edit = createSorter().calculateEditIfUnsorted(createAST(UNSORTED), UNSORTED, getOptions());
+	final Document document = new Document(UNSORTED);
+	edit.apply(document);
+	assertEquals(SORTED, document.get());
+    }
+
+    @Test
+    public void sortedSourcesAreNeitherReportedNorChanged() throws Exception {
+	for (final String source : new String[] { UNSORTED, INNER, ANONYMOUS, LAMBDA }) {
+	    final String sorted = sort(source);
+	    assertNull(findFirstUnsorted(sorted));
+	    assertEquals(sorted, sort(sorted));
+	}
+    }
+
+    private static void assertAgree(String source) throws Exception {
+	final String sorted = sort(source);
+	final BodyDeclaration unsorted = findFirstUnsorted(source);
+	assertEquals("reported unsorted: " + unsorted + ", sorted:\n" + sorted, unsorted != null,
+		!sorted.equals(source));
+    }
+
+    private static BodyDeclaration findFirstUnsorted(String source) {
+	return createSorter().findFirstUnsorted(createAST(source));
+    }
+
+    private static String sort(String source) throws Exception {
+	final TextEdit edit = createSorter().calculateEdit(createAST(source), source, getOptions());
+	if (edit == null)
+	    return source;
+	final Document document = new Document(source);
+	edit.apply(document);
+	return document.get();
+    }
+
+    private static CleanCodeMethodSorter createSorter() {
+	return new CleanCodeMethodSorter(new PropertiesPreferences());
+    }
+
+    private static CompilationUnit createAST(String source) {
+	return ASTUtils.createAST(source.toCharArray(), "Foo.java", new String[0], new String[0], getOptions());
+    }
+
+    private static Map<String, String> getOptions() {
+	final Map<String, String> options = JavaCore.getOptions();
+	JavaCore.setComplianceOptions("1.8", options);
+	return options;
+    }
+
+}
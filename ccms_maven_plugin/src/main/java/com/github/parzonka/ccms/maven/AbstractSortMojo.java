@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import com.github.parzonka.ccms.cli.HeadlessSorter;
+import com.github.parzonka.ccms.preferences.IPreferences;
+import com.github.parzonka.ccms.preferences.PropertiesPreferences;
+
+/**
+ * Processes the source files of a module which changed since the last build.
+ * The files known to be sorted are recorded in a {@link SortState} in the build
+ * directory of the module, so unchanged files are neither parsed nor analyzed
+ * again.
+ * <p>
+ * The mojos keep all state in their instance and the sorter uses its own
+ * threads, so modules can be processed in parallel by <code>mvn -T</code>. The
+ * processors are then shared by the modules built at once, so the modules do
+ * not oversubscribe them.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public abstract class AbstractSortMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    @Parameter(defaultValue = "${session}", readonly = true, required = true)
+    private MavenSession session;
+
+    /**
+     * Whether the test sources are processed as well.
+     */
+    @Parameter(property = "ccms.includeTests", defaultValue = "false")
+    private boolean includeTests;
+
+    /**
+     * The preferences, e.g. the <code>ccms_plugin.prefs</code> of a workspace.
+     * The defaults of the plugin are used if not given.
+     */
+    @Parameter(property = "ccms.preferences")
+    private File preferences;
+
+    @Parameter(property = "ccms.source", defaultValue = "${maven.compiler.source}")
+    private String source;
+
+    @Parameter(property = "ccms.encoding", defaultValue = "${project.build.sourceEncoding}")
+    private String encoding;
+
+    /**
+     * The number of files parsed at once. Defaults to the number of
+     * processors divided by the number of modules built at once.
+     */
+    @Parameter(property = "ccms.threads", defaultValue = "0")
+    private int threads;
+
+    /**
+     * The maximum number of files sharing one binding environment.
+     */
+    @Parameter(property = "ccms.groupSize", defaultValue = "100")
+    private int groupSize;
+
+    /**
+     * Whether only the files changed since the last build are processed.
+     */
+    @Parameter(property = "ccms.incremental", defaultValue = "true")
+    private boolean incremental;
+
+    @Parameter(defaultValue = "${project.build.directory}/ccms-state.properties", required = true)
+    private File stateFile;
+
+    @Parameter(property = "ccms.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+	if (this.skip) {
+	    getLog().info("Skipping Clean Code Method Sorter");
+	    return;
+	}
+	final List<Path> roots = getSourceRoots();
+	if (roots.isEmpty())
+	    return;
+	try {
+	    final IPreferences preferences = this.preferences == null ? new PropertiesPreferences()
+		    : PropertiesPreferences.load(this.preferences);
+	    final String sourceLevel = this.source == null ? "1.6" : this.source;
+	    final Path basedir = this.project.getBasedir().toPath().toAbsolutePath();
+	    final SortState state = SortState.load(this.stateFile.toPath(), basedir,
+		    SortState.fingerprint(preferences, sourceLevel));
+
+	    final List<Path> files = HeadlessSorter.collectSourceFiles(roots);
+	    final List<Path> changed = new ArrayList<Path>();
+	    for (final Path file : files) {
+		if (!this.incremental || !state.isUpToDate(file))
+		    changed.add(file);
+	    }
+	    getLog().info(String.format("%d of %d files changed since the last build", changed.size(), files.size()));
+
+	    final HeadlessSorter sorter = new HeadlessSorter(toStrings(roots), getClasspath(), getCharset(),
+		    sourceLevel, preferences, getThreads(), this.groupSize);
+	    sorter.setCheckOnly(isCheckOnly());
+	    if (!changed.isEmpty())
+		sorter.sort(changed);
+
+	    final Set<Path> failed = sorter.getFailedFiles();
+	    final Set<Path> unsorted = sorter.getUnsortedFiles();
+	    for (final Path file : changed) {
+		if (!failed.contains(file) && !unsorted.contains(file))
+		    state.markSorted(file);
+	    }
+	    state.retain(files);
+	    state.store();
+
+	    report(sorter);
+	} catch (final IOException e) {
+	    throw new MojoExecutionException(e.getMessage(), e);
+	} catch (final DependencyResolutionRequiredException e) {
+	    throw new MojoExecutionException(e.getMessage(), e);
+	} catch (final InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new MojoExecutionException("Interrupted while sorting methods", e);
+	}
+    }
+
+    /**
+     * @return the configured number of threads, or an equal share of the
+     *         processors for each module built at once
+     */
+    private int getThreads() {
+	if (this.threads > 0)
+	    return this.threads;
+	final int modules = Math.max(1, this.session.getRequest().getDegreeOfConcurrency());
+	return Math.max(1, Runtime.getRuntime().availableProcessors() / modules);
+    }
+
+    /**
+     * @return true if the files are only checked, not sorted
+     */
+    protected abstract boolean isCheckOnly();
+
+    /**
+     * Reports the outcome of processing the changed files.
+     *
+     * @param sorter
+     *            the sorter which processed the changed files
+     * @throws MojoFailureException
+     *             if the build has to fail
+     */
+    protected abstract void report(HeadlessSorter sorter) throws MojoFailureException;
+
+    private List<Path> getSourceRoots() {
+	final List<String> roots = new ArrayList<String>(this.project.getCompileSourceRoots());
+	if (this.includeTests)
+	    roots.addAll(this.project.getTestCompileSourceRoots());
+	final List<Path> result = new ArrayList<Path>();
+	for (final String root : roots) {
+	    final File directory = new File(root);
+	    if (directory.isDirectory())
+		result.add(directory.toPath().toAbsolutePath());
+	}
+	return result;
+    }
+
+    /**
+     * @return the existing classpath elements. JDT rejects missing ones, e.g.
+     *         the output directory before the first compilation.
+     * @throws DependencyResolutionRequiredException
+     */
+    private String[] getClasspath() throws DependencyResolutionRequiredException {
+	final List<String> classpath = new ArrayList<String>();
+	for (final String element : this.includeTests ? this.project.getTestClasspathElements() : this.project
+		.getCompileClasspathElements()) {
+	    if (new File(element).exists())
+		classpath.add(element);
+	}
+	return classpath.toArray(new String[classpath.size()]);
+    }
+
+    private Charset getCharset() {
+	if (this.encoding == null) {
+	    getLog().warn("No source encoding set, using the platform encoding " + Charset.defaultCharset());
+	    return Charset.defaultCharset();
+	}
+	return Charset.forName(this.encoding);
+    }
+
+    private static String[] toStrings(List<Path> paths) {
+	final String[] result = new String[paths.size()];
+	for (int i = 0; i < result.length; i++)
+	    result[i] = paths.get(i).toString();
+	return result;
+    }
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.maven;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import com.github.parzonka.ccms.cli.HeadlessSorter;
+import com.github.parzonka.ccms.sorter.UnsortedMember;
+
+/**
+ * Checks that the methods of the source files which changed since the last
+ * build are sorted, without changing them. Fails the build if they are not.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+@Mojo(name = "check", defaultPhase = LifecyclePhase.VERIFY, requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
+public class CheckMojo extends AbstractSortMojo {
+
+    /**
+     * Whether unsorted files fail the build or are only reported.
+     */
+    @Parameter(property = "ccms.failOnUnsorted", defaultValue = "true")
+    private boolean failOnUnsorted;
+
+    @Override
+    protected boolean isCheckOnly() {
+	return true;
+    }
+
+    @Override
+    protected void report(HeadlessSorter sorter) throws MojoFailureException {
+	for (final UnsortedMember unsorted : sorter.getUnsortedMembers())
+	    getLog().error(unsorted.toString());
+	if (sorter.getFailedCount() > 0)
+	    throw new MojoFailureException(sorter.getFailedCount() + " files could not be checked");
+	if (sorter.getUnsortedCount() == 0)
+	    return;
+	final String message = "Methods are not sorted in " + sorter.getUnsortedCount()
+		+ " files. Run mvn ccms:sort to sort them.";
+	if (this.failOnUnsorted)
+	    throw new MojoFailureException(message);
+	getLog().warn(message);
+    }
+
+}
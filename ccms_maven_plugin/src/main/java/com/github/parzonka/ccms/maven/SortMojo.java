@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.maven;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import com.github.parzonka.ccms.cli.HeadlessSorter;
+
+/**
+ * Sorts the methods of the source files which changed since the last build.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+@Mojo(name = "sort", defaultPhase = LifecyclePhase.PROCESS_SOURCES, requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
+public class SortMojo extends AbstractSortMojo {
+
+    @Override
+    protected boolean isCheckOnly() {
+	return false;
+    }
+
+    @Override
+    protected void report(HeadlessSorter sorter) throws MojoFailureException {
+	getLog().info(
+		String.format("Sorted %d, unchanged %d, failed %d files", sorter.getSortedCount(),
+			sorter.getUnchangedCount(), sorter.getFailedCount()));
+	if (sorter.getFailedCount() > 0)
+	    throw new MojoFailureException(sorter.getFailedCount() + " files could not be sorted");
+    }
+
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import com.github.parzonka.ccms.preferences.IPreferences;
+
+/**
+ * The state file of a module, mapping each source file known to be sorted to
+ * the hash of its contents. A source file whose hash still matches needs
+ * neither to be sorted nor to be checked again. The state also records the
+ * fingerprint of the preferences the files were sorted with, and is discarded
+ * when the preferences change.
+ * <p>
+ * A state belongs to a single module and is not shared between threads.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class SortState {
+
+    private static final String FINGERPRINT_KEY = "#preferences";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Path file;
+    private final Path basedir;
+    private final String fingerprint;
+    private final Properties hashes = new Properties();
+    private final MessageDigest digest;
+
+    /**
+     * @param file
+     *            the state file
+     * @param basedir
+     *            the directory the paths of the source files are stored
+     *            relative to
+     * @param fingerprint
+     *            the fingerprint of the current preferences
+     */
+    private SortState(Path file, Path basedir, String fingerprint) {
+	this.file = file;
+	this.basedir = basedir;
+	this.fingerprint = fingerprint;
+	try {
+	    this.digest = MessageDigest.getInstance("SHA-1");
+	} catch (final NoSuchAlgorithmException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    /**
+     * Loads the state unless it does not exist or was recorded with other
+     * preferences, in which case the state is empty.
+     *
+     * @param file
+     * @param basedir
+     * @param fingerprint
+     *            the fingerprint of the current preferences
+     * @return the state
+     * @throws IOException
+     */
+    public static SortState load(Path file, Path basedir, String fingerprint) throws IOException {
+	final SortState state = new SortState(file, basedir, fingerprint);
+	if (Files.isRegularFile(file)) {
+	    final InputStream in = Files.newInputStream(file);
+	    try {
+		state.hashes.load(in);
+	    } finally {
+		in.close();
+	    }
+	    if (!fingerprint.equals(state.hashes.getProperty(FINGERPRINT_KEY)))
+		state.hashes.clear();
+	    state.hashes.remove(FINGERPRINT_KEY);
+	}
+	return state;
+    }
+
+    /**
+     * @param preferences
+     * @param sourceLevel
+     * @return a hash of everything which determines the ordering besides the
+     *         sources themselves
+     */
+    public static String fingerprint(IPreferences preferences, String sourceLevel) {
+	final StringBuilder sb = new StringBuilder();
+	sb.append(sourceLevel);
+	sb.append('|').append(preferences.applyWorkingListHeuristics());
+	sb.append('|').append(preferences.isBeforeAfterRelation());
+	sb.append('|').append(preferences.isGetterSetterClustering());
+	sb.append('|').append(preferences.isInvocationStrategyDepthFirst());
+	sb.append('|').append(preferences.isOverloadedMethodClustering());
+	sb.append('|').append(preferences.getMemberSortOrder());
+	sb.append('|').append(preferences.getMethodOrderingPreferences());
+	try {
+	    return toHex(MessageDigest.getInstance("SHA-1").digest(sb.toString().getBytes(UTF_8)));
+	} catch (final NoSuchAlgorithmException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    /**
+     * @param sourceFile
+     * @return true if the source file is known to be sorted in its current
+     *         contents
+     * @throws IOException
+     */
+    public boolean isUpToDate(Path sourceFile) throws IOException {
+	final String hash = this.hashes.getProperty(getKey(sourceFile));
+	return hash != null && hash.equals(hash(sourceFile));
+    }
+
+    /**
+     * Records the current contents of the source file as sorted.
+     *
+     * @param sourceFile
+     * @throws IOException
+     */
+    public void markSorted(Path sourceFile) throws IOException {
+	this.hashes.setProperty(getKey(sourceFile), hash(sourceFile));
+    }
+
+    /**
+     * Forgets the source files which are not among the given ones, e.g. since
+     * they were deleted.
+     *
+     * @param sourceFiles
+     */
+    public void retain(Collection<Path> sourceFiles) {
+	final Set<String> keys = new HashSet<String>();
+	for (final Path sourceFile : sourceFiles)
+	    keys.add(getKey(sourceFile));
+	this.hashes.keySet().retainAll(keys);
+    }
+
+    /**
+     * Writes the state to a temporary file first, so an interrupted build
+     * never leaves a truncated state behind.
+     *
+     * @throws IOException
+     */
+    public void store() throws IOException {
+	final Properties properties = new Properties();
+	properties.putAll(this.hashes);
+	properties.setProperty(FINGERPRINT_KEY, this.fingerprint);
+	Files.createDirectories(this.file.getParent());
+	final Path temp = Files.createTempFile(this.file.getParent(), this.file.getFileName().toString(), ".tmp");
+	try {
+	    final OutputStream out = Files.newOutputStream(temp);
+	    try {
+		properties.store(out, "Clean Code Method Sorter: hashes of the sorted source files");
+	    } finally {
+		out.close();
+	    }
+	    Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	} finally {
+	    Files.deleteIfExists(temp);
+	}
+    }
+
+    private String getKey(Path sourceFile) {
+	final Path relative = sourceFile.startsWith(this.basedir) ? this.basedir.relativize(sourceFile) : sourceFile;
+	return relative.toString().replace('\\', '/');
+    }
+
+    private String hash(Path sourceFile) throws IOException {
+	return toHex(this.digest.digest(Files.readAllBytes(sourceFile)));
+    }
+
+    private static String toHex(byte[] bytes) {
+	final StringBuilder sb = new StringBuilder(2 * bytes.length);
+	for (final byte b : bytes)
+	    sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+	return sb.toString();
+    }
+
+}
@@ -8,14 +8,22 @@
  */
 package com.github.parzonka.ccms;
 
+import org.eclipse.core.runtime.Plugin;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.resource.ImageDescriptor;
-import org.eclipse.ui.plugin.AbstractUIPlugin;
+import org.eclipse.ui.preferences.ScopedPreferenceStore;
 import org.osgi.framework.BundleContext;
 
 /**
  * The activator class controls the plug-in life cycle
+ * <p>
+ * Does not extend AbstractUIPlugin, so starting the plugin in a headless
+ * application, e.g. the {@link com.github.parzonka.ccms.batch.BatchSortApplication},
+ * does not activate the workbench. The preference store is only created when
+ * the UI asks for it.
  */
-public class Activator extends AbstractUIPlugin {
+public class Activator extends Plugin {
 
     // The plug-in ID
     public static final String PLUGIN_ID = "ccms_plugin"; //$NON-NLS-1$
@@ -23,6 +31,8 @@ public class Activator extends AbstractUIPlugin {
     // The shared instance
     private static Activator plugin;
 
+    private ScopedPreferenceStore preferenceStore;
+
     /**
      * The constructor
      */
@@ -38,7 +48,7 @@ public class Activator extends AbstractUIPlugin {
      * @return the image descriptor
      */
     public static ImageDescriptor getImageDescriptor(String path) {
-	return imageDescriptorFromPlugin(PLUGIN_ID, path);
+	return ImageDescriptor.createFromURL(getDefault().getBundle().getEntry(path));
     }
 
     /**
@@ -50,8 +60,25 @@ public class Activator extends AbstractUIPlugin {
 	return plugin;
     }
 
+    /**
+     * Returns the preference store of the plugin, which is backed by the
+     * instance scope and saved when the plugin stops.
+     *
+     * @return the preference store
+     */
+    public synchronized IPreferenceStore getPreferenceStore() {
+	if (this.preferenceStore == null)
+	    this.preferenceStore = new ScopedPreferenceStore(new InstanceScope(), PLUGIN_ID);
+	return this.preferenceStore;
+    }
+
     @Override
     public void stop(BundleContext context) throws Exception {
+	synchronized (this) {
+	    if (this.preferenceStore != null && this.preferenceStore.needsSaving())
+		this.preferenceStore.save();
+	    this.preferenceStore = null;
+	}
 	plugin = null;
 	super.stop(context);
     }
@@ -35,6 +35,21 @@ public class Utils {
 	return buffer.toString();
     }
 
+    /**
+     * @param strings
+     * @param delimiter
+     *            a regular expression
+     * @return the trimmed, non-empty strings between the delimiters
+     */
+    public static List<String> split(String strings, String delimiter) {
+	final List<String> result = new ArrayList<String>();
+	for (final String string : strings.split(delimiter)) {
+	    if (string.trim().length() > 0)
+		result.add(string.trim());
+	}
+	return result;
+    }
+
     public static <T> List<T> list(T... objects) {
 	final List<T> result = new ArrayList<T>();
 	for (final T t : objects)
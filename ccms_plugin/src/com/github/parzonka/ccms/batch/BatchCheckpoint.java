@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.batch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * Records the compilation units completed by a batch in an append-only file,
+ * so an interrupted batch can be resumed without sorting them again. Each line
+ * holds the handle identifier of a compilation unit and the hash of its
+ * contents after sorting. A compilation unit is skipped by a resumed batch
+ * only if its contents still have that hash.
+ * <p>
+ * The first line holds a key identifying the sorter and its preferences. The
+ * recorded entries are discarded if the key does not match, as the completed
+ * compilation units would be sorted differently now. Batches sorting different
+ * selections use different files, see {@link #getFile(File, String)}, so
+ * running one batch does not discard the checkpoint of another.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class BatchCheckpoint {
+
+    private static final String ENCODING = "UTF-8";
+    private static final char SEPARATOR = '\t';
+
+    private final File file;
+    private final String key;
+    private Map<String, String> completed = Collections.emptyMap();
+    private Writer writer;
+
+    /**
+     * @param file
+     *            the checkpoint file
+     * @param key
+     *            identifies the sorter and its preferences
+     */
+    public BatchCheckpoint(File file, String key) {
+	super();
+	this.file = file;
+	this.key = key.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * @param directory
+     *            the directory holding the checkpoints
+     * @param job
+     *            identifies the batch, e.g. the handler and the selected
+     *            elements
+     * @return the checkpoint file of the batch
+     */
+    public static File getFile(File directory, String job) {
+	return new File(directory, "batch-" + hash(job) + ".checkpoint");
+    }
+
+    /**
+     * Reads the entries of an interrupted batch and opens the file for
+     * appending.
+     *
+     * @throws IOException
+     */
+    public void open() throws IOException {
+	this.completed = read();
+	final boolean resume = !this.completed.isEmpty();
+	this.writer = new OutputStreamWriter(new FileOutputStream(this.file, resume), ENCODING);
+	if (!resume) {
+	    this.writer.write(this.key + "\n");
+	    this.writer.flush();
+	}
+    }
+
+    /**
+     * May be called concurrently once the checkpoint is open.
+     *
+     * @param cu
+     * @return true, if the cu was completed by the interrupted batch and has
+     *         not been changed since
+     * @throws JavaModelException
+     */
+    public boolean isCompleted(ICompilationUnit cu) throws JavaModelException {
+	final String hash = this.completed.get(cu.getHandleIdentifier());
+	return hash != null && hash.equals(hash(cu.getSource()));
+    }
+
+    /**
+     * Appends an entry for a completed cu. Must not be called concurrently.
+     *
+     * @param cu
+     * @param source
+     *            the contents of the cu after sorting
+     * @throws IOException
+     */
+    public void complete(ICompilationUnit cu, String source) throws IOException {
+	this.writer.write(cu.getHandleIdentifier() + SEPARATOR + hash(source) + "\n");
+	this.writer.flush();
+    }
+
+    /**
+     * Closes the file, keeping it for resuming the batch.
+     */
+    public void close() {
+	if (this.writer == null)
+	    return;
+	try {
+	    this.writer.close();
+	} catch (final IOException e) {
+	    // nothing left to write
+	}
+	this.writer = null;
+    }
+
+    /**
+     * Closes and deletes the file once the batch has completed.
+     */
+    public void delete() {
+	close();
+	this.file.delete();
+    }
+
+    /**
+     * @return the entries of the file, or none if the file does not exist or
+     *         was written with another key
+     * @throws IOException
+     */
+    private Map<String, String> read() throws IOException {
+	if (!this.file.isFile())
+	    return Collections.emptyMap();
+	final Map<String, String> entries = new HashMap<String, String>();
+	final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.file),
+		ENCODING));
+	try {
+	    if (!this.key.equals(reader.readLine()))
+		return Collections.emptyMap();
+	    String line;
+	    while ((line = reader.readLine()) != null) {
+		// a line torn by a crash has no separator or an incomplete hash
+		final int separator = line.lastIndexOf(SEPARATOR);
+		if (separator > 0 && line.length() - separator - 1 == 32)
+		    entries.put(line.substring(0, separator), line.substring(separator + 1));
+	    }
+	} finally {
+	    reader.close();
+	}
+	return entries;
+    }
+
+    private static String hash(String source) {
+	try {
+	    final byte[] digest = MessageDigest.getInstance("MD5").digest(source.getBytes(ENCODING));
+	    final StringBuilder hex = new StringBuilder();
+	    for (final byte b : digest)
+		hex.append(String.format("%02x", b & 0xff));
+	    return hex.toString();
+	} catch (final NoSuchAlgorithmException e) {
+	    throw new IllegalStateException(e);
+	} catch (final UnsupportedEncodingException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.JavaCore;
+import org.osgi.service.prefs.BackingStoreException;
+
+import com.github.parzonka.ccms.Activator;
+import com.github.parzonka.ccms.preferences.PropertiesPreferences;
+import com.github.parzonka.ccms.sorter.CleanCodeMethodSorter;
+import com.github.parzonka.ccms.sorter.IMethodSorter;
+import com.github.parzonka.ccms.sorter.UnsortedMember;
+
+/**
+ * Sorts the methods of Java projects in a headless Eclipse, e.g. in a CI build
+ * depending on Eclipse-only classpath containers. Does not start the
+ * workbench: the preferences are read from the workspace instead of the
+ * preference store of the plugin.
+ * <p>
+ * Usage:
+ * <code>eclipse -nosplash -data &lt;workspace&gt; -application ccms_plugin.sort [-check] [-import &lt;project directory&gt;]... [&lt;project&gt;]...</code>
+ * <p>
+ * Sorts all Java projects of the workspace when no project is given. Exits with
+ * {@link #EXIT_FAILED} when a compilation unit could not be sorted. With
+ * <code>-check</code> the files are not changed. The first unsorted member of
+ * each file is printed instead, and the application exits with
+ * {@link #EXIT_UNSORTED} if there is one.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class BatchSortApplication implements IApplication {
+
+    public static final Integer EXIT_UNSORTED = Integer.valueOf(1);
+    public static final Integer EXIT_FAILED = Integer.valueOf(2);
+
+    private static final String CHECK_OPTION = "-check";
+
+    private static final String JDT_UI_PLUGIN_ID = "org.eclipse.jdt.ui";
+
+    @Override
+    public Object start(IApplicationContext context) throws Exception {
+	final String[] args = (String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+	final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+	final boolean checkOnly = args != null && Arrays.asList(args).contains(CHECK_OPTION);
+
+	long start = System.currentTimeMillis();
+	final IJavaElement[] projects;
+	try {
+	    projects = openProjects(workspace.getRoot(), args == null ? new String[0] : args);
+	} catch (final IllegalArgumentException e) {
+	    System.err.println(e.getMessage());
+	    return EXIT_FAILED;
+	} catch (final CoreException e) {
+	    System.err.println(e.getStatus().getMessage());
+	    return EXIT_FAILED;
+	}
+	printPhase("Open " + projects.length + " projects", start);
+
+	start = System.currentTimeMillis();
+	final PropertiesPreferences preferences = getWorkspacePreferences();
+	final BatchSortJob job = new BatchSortJob("Sorting methods", new CompilationUnitEnumerator(projects,
+		new CompilationUnitFilter(preferences.getBatchIncludes(), preferences.getBatchExcludes())),
+		new IMethodSorterFactory() {
+		    @Override
+		    public IMethodSorter create() {
+			return new CleanCodeMethodSorter(preferences);
+		    }
+		}, preferences.getBatchGroupSize(), preferences.getBatchHeapBudget(), null);
+	job.setCheckOnly(checkOnly);
+	job.schedule();
+	job.join();
+	printPhase(checkOnly ? "Check" : "Sort", start);
+	for (final StageCounter stageCounter : job.getStageCounters())
+	    System.out.println("  " + stageCounter);
+	if (checkOnly) {
+	    for (final UnsortedMember unsorted : job.getUnsortedMembers())
+		System.out.println(unsorted);
+	    System.out.println(String.format("Unsorted %d, sorted %d, failed %d compilation units",
+		    job.getUnsortedCount(), job.getUnchangedCount(), job.getFailedCount()));
+	} else {
+	    System.out.println(String.format("Sorted %d, unchanged %d, failed %d compilation units",
+		    job.getSortedCount(), job.getUnchangedCount(), job.getFailedCount()));
+
+	    start = System.currentTimeMillis();
+	    workspace.save(true, null);
+	    printPhase("Save workspace", start);
+	}
+
+	final IStatus result = job.getResult();
+	if (result != null && result.getSeverity() == IStatus.ERROR)
+	    printStatus(result);
+	if (result == null || result.getSeverity() >= IStatus.ERROR || job.getFailedCount() > 0)
+	    return EXIT_FAILED;
+	if (checkOnly && job.getUnsortedCount() > 0)
+	    return EXIT_UNSORTED;
+	return EXIT_OK;
+    }
+
+    @Override
+    public void stop() {
+	// the job finishes with the application
+    }
+
+    /**
+     * Imports the projects given by <code>-import &lt;directory&gt;</code> and
+     * opens the projects given by name.
+     *
+     * @param root
+     * @param args
+     * @return the Java projects to be sorted. All Java projects of the
+     *         workspace, when no project is given.
+     * @throws CoreException
+     */
+    private static IJavaElement[] openProjects(IWorkspaceRoot root, String[] args) throws CoreException {
+	final List<IProject> projects = new ArrayList<IProject>();
+	for (int i = 0; i < args.length; i++) {
+	    if (args[i].equals("-import")) {
+		if (++i == args.length)
+		    throw new IllegalArgumentException("Missing directory of -import");
+		projects.add(importProject(root, args[i]));
+	    } else if (args[i].equals(CHECK_OPTION)) {
+		continue;
+	    } else if (args[i].startsWith("-")) {
+		throw new IllegalArgumentException("Unknown option " + args[i]);
+	    } else {
+		final IProject project = root.getProject(args[i]);
+		if (!project.exists())
+		    throw new IllegalArgumentException("No project " + args[i] + " in the workspace");
+		projects.add(project);
+	    }
+	}
+	if (projects.isEmpty()) {
+	    for (final IProject project : root.getProjects())
+		projects.add(project);
+	}
+
+	final List<IJavaElement> result = new ArrayList<IJavaElement>();
+	for (final IProject project : projects) {
+	    if (!project.isOpen())
+		project.open(null);
+	    if (project.hasNature(JavaCore.NATURE_ID))
+		result.add(JavaCore.create(project));
+	}
+	return result.toArray(new IJavaElement[result.size()]);
+    }
+
+    private static IProject importProject(IWorkspaceRoot root, String directory) throws CoreException {
+	final IProjectDescription description = root.getWorkspace().loadProjectDescription(
+		new Path(directory).append(IProjectDescription.DESCRIPTION_FILE_NAME));
+	final IProject project = root.getProject(description.getName());
+	if (!project.exists())
+	    project.create(description, null);
+	return project;
+    }
+
+    /**
+     * Reads the preferences of the plugin and the member sort order of the JDT
+     * UI from the workspace, without starting the UI plugins.
+     *
+     * @return the preferences
+     * @throws BackingStoreException
+     */
+    private static PropertiesPreferences getWorkspacePreferences() throws BackingStoreException {
+	final Properties properties = new Properties();
+	final IEclipsePreferences node = new InstanceScope().getNode(Activator.PLUGIN_ID);
+	for (final String key : node.keys())
+	    properties.setProperty(key, node.get(key, ""));
+	final String memberSortOrder = new InstanceScope().getNode(JDT_UI_PLUGIN_ID).get(
+		PropertiesPreferences.MEMBER_SORT_ORDER, null);
+	if (memberSortOrder != null)
+	    properties.setProperty(PropertiesPreferences.MEMBER_SORT_ORDER, memberSortOrder);
+	return new PropertiesPreferences(properties);
+    }
+
+    private static void printPhase(String phase, long start) {
+	System.out.println(phase + ": " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static void printStatus(IStatus status) {
+	if (status.getMessage().length() > 0)
+	    System.err.println(status.getMessage());
+	for (final IStatus child : status.getChildren())
+	    printStatus(child);
+    }
+
+}
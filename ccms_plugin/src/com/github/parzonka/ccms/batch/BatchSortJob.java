@@ -0,0 +1,777 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.batch;
+
+import static com.github.parzonka.ccms.Utils.list;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobManager;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.ASTRequestor;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.text.edits.TextEdit;
+
+import com.github.parzonka.ccms.Activator;
+import com.github.parzonka.ccms.reconcile.PrecomputedOrderings;
+import com.github.parzonka.ccms.sorter.IMethodSorter;
+import com.github.parzonka.ccms.sorter.UnsortedMember;
+import com.github.parzonka.ccms.sorter.callgraph.ASTUtils;
+
+/**
+ * Sorts the methods of enumerated compilation units in a pipeline of three
+ * stages, each running on its own threads:
+ * <ol>
+ * <li>read: a single thread enumerates the compilation units and estimates
+ * their costs from the sizes of their files,</li>
+ * <li>analyze: a bounded pool of workers parses the compilation units with
+ * bindings, analyzes them and calculates the edits,</li>
+ * <li>commit: the job thread applies the edits to the files.</li>
+ * </ol>
+ * The hand-offs between the stages are bounded, so a slow stage applies
+ * backpressure to its predecessor and the memory used stays flat. The
+ * committing of one group overlaps the analysis of the next ones.
+ * {@link StageCounter}s count the throughput of each stage.
+ * <p>
+ * The compilation units are split into groups of the same project which are
+ * parsed together, so a group shares one binding environment across the source
+ * folders of its project and JDT does not reload the same classpath types for
+ * every file. Each AST is analyzed as soon as it is created. The projects are
+ * enumerated in build order, and groups of independent projects are analyzed in
+ * parallel. The groups of a project wait until the groups of the projects it
+ * requires are done. Among the groups ready to run, the
+ * {@link LargestFirstScheduler} starts the most expensive one first, so large
+ * compilation units do not form a long tail at the end of the batch.
+ * <p>
+ * A {@link MemoryGovernor} admits a group to the pool only while the estimated
+ * heap retained by the groups being parsed stays within the budget. A group is
+ * released as soon as all of its edits are calculated, since neither the ASTs
+ * nor the sorters are referenced after that. Besides the estimated peak of the
+ * governor, the job samples the heap actually used while it commits.
+ * <p>
+ * A worker holds the modify rules of the files in its group only, so unrelated
+ * groups do not block each other. The workers only calculate the edits. The job
+ * thread commits them inside a single workspace operation which avoids updates,
+ * so the resource changes of the whole batch are coalesced into one delta and
+ * trigger one build at the end instead of one per file.
+ * <p>
+ * Completed compilation units are recorded in a {@link BatchCheckpoint}. A
+ * batch interrupted by a cancellation or a restart skips them when it is run
+ * again, as long as they have not been changed since. The checkpoint is deleted
+ * once a batch completes.
+ * <p>
+ * In a dry run the edits are not committed. The commit stage measures the
+ * {@link SortImpact} of each edit instead, reusing the orderings precomputed
+ * while editing where they are still valid. A dry run only reads the files, so
+ * its workers hold no rules. They calculate an edit only for compilation units
+ * which have a member out of order.
+ * <p>
+ * In check mode the workers neither create rewrites nor edits. They only look
+ * for the first member of each compilation unit which is out of order, so
+ * verifying a batch costs no more than parsing and analyzing it. Like a dry
+ * run, check mode holds no rules. The
+ * {@link UnsortedMember}s found are available when the job is done.
+ * <p>
+ * The job does not depend on the UI. The counts of sorted, unchanged and
+ * failed compilation units are available when the job is done.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class BatchSortJob extends Job {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final CompilationUnitEnumerator enumerator;
+    private final IMethodSorterFactory sorterFactory;
+    private final int groupSize;
+    private final MemoryGovernor memoryGovernor;
+    private final BatchCheckpoint checkpoint;
+    private final List<SortImpact> impacts = Collections.synchronizedList(new ArrayList<SortImpact>());
+    private volatile boolean dryRun;
+    private volatile boolean checkOnly;
+    private final List<UnsortedMember> unsortedMembers = Collections
+	    .synchronizedList(new ArrayList<UnsortedMember>());
+    private final BlockingQueue<SortResult> results;
+    private final StageCounter readStage = new StageCounter("Read");
+    private final StageCounter analyzeStage = new StageCounter("Analyze");
+    private final StageCounter commitStage = new StageCounter("Commit");
+    private final AtomicInteger enumeratedCount = new AtomicInteger();
+    private volatile boolean enumerated;
+    private volatile IStatus enumerationStatus = Status.OK_STATUS;
+    private final AtomicInteger sortedCount = new AtomicInteger();
+    private final AtomicInteger unsortedCount = new AtomicInteger();
+    private final AtomicInteger unchangedCount = new AtomicInteger();
+    private final AtomicInteger skippedCount = new AtomicInteger();
+    private final AtomicInteger failedCount = new AtomicInteger();
+    private volatile boolean canceled;
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private volatile long peakHeapUsed;
+
+    /**
+     * @param name
+     * @param enumerator
+     *            enumerates the compilation units to be sorted
+     * @param sorterFactory
+     *            creates a sorter for each compilation unit
+     * @param groupSize
+     *            the maximum number of compilation units parsed together
+     * @param heapBudget
+     *            the heap in bytes the ASTs parsed at once may retain
+     * @param checkpoint
+     *            records the completed compilation units, or null
+     */
+    public BatchSortJob(String name, CompilationUnitEnumerator enumerator, IMethodSorterFactory sorterFactory,
+	    int groupSize, long heapBudget, BatchCheckpoint checkpoint) {
+	super(name);
+	this.enumerator = enumerator;
+	this.sorterFactory = sorterFactory;
+	this.groupSize = groupSize;
+	this.results = new LinkedBlockingQueue<SortResult>(2 * groupSize);
+	this.memoryGovernor = new MemoryGovernor(heapBudget);
+	this.checkpoint = checkpoint;
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+	final MultiStatus status = new MultiStatus(Activator.PLUGIN_ID, IStatus.OK,
+		"Problems occurred while sorting methods.", null);
+	try {
+	    if (this.checkpoint != null)
+		this.checkpoint.open();
+	} catch (final IOException e) {
+	    return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Could not open the checkpoint of the batch", e);
+	}
+	final LargestFirstScheduler scheduler = new LargestFirstScheduler(Runtime.getRuntime().availableProcessors());
+	final ExecutorService enumerationExecutor = Executors.newSingleThreadExecutor();
+	try {
+	    enumerationExecutor.execute(new Runnable() {
+		@Override
+		public void run() {
+		    enumerate(scheduler);
+		}
+	    });
+	    if (this.dryRun || this.checkOnly) {
+		commitAll(status, monitor);
+	    } else {
+		ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
+		    @Override
+		    public void run(IProgressMonitor monitor) {
+			commitAll(status, monitor);
+		    }
+		}, null, IWorkspace.AVOID_UPDATE, monitor);
+	    }
+	    if (!this.enumerationStatus.isOK())
+		status.add(this.enumerationStatus);
+	    else if (this.checkpoint != null)
+		this.checkpoint.delete();
+	    return status;
+	} catch (final OperationCanceledException e) {
+	    return Status.CANCEL_STATUS;
+	} catch (final CoreException e) {
+	    return e.getStatus();
+	} finally {
+	    this.canceled = true;
+	    enumerationExecutor.shutdownNow();
+	    scheduler.shutdownNow();
+	    if (this.checkpoint != null)
+		this.checkpoint.close();
+	}
+    }
+
+    /**
+     * In a dry run the edits are calculated but not committed. Must be set
+     * before the job is scheduled.
+     *
+     * @param dryRun
+     */
+    public void setDryRun(boolean dryRun) {
+	this.dryRun = dryRun;
+    }
+
+    /**
+     * In check mode the compilation units are only checked for members out of
+     * order. Must be set before the job is scheduled.
+     *
+     * @param checkOnly
+     */
+    public void setCheckOnly(boolean checkOnly) {
+	this.checkOnly = checkOnly;
+    }
+
+    /**
+     * @return the first unsorted member of each compilation unit found in check
+     *         mode, ordered by path
+     */
+    public List<UnsortedMember> getUnsortedMembers() {
+	final List<UnsortedMember> result = new ArrayList<UnsortedMember>(this.unsortedMembers);
+	Collections.sort(result);
+	return result;
+    }
+
+    /**
+     * @return the impacts measured by a dry run
+     */
+    public List<SortImpact> getImpacts() {
+	return new ArrayList<SortImpact>(this.impacts);
+    }
+
+    /**
+     * @return the number of compilation units whose methods were reordered
+     */
+    public int getSortedCount() {
+	return this.sortedCount.get();
+    }
+
+    /**
+     * @return the number of compilation units whose methods were found out of
+     *         order in check mode or in a dry run
+     */
+    public int getUnsortedCount() {
+	return this.unsortedCount.get();
+    }
+
+    /**
+     * @return the number of compilation units which were sorted already
+     */
+    public int getUnchangedCount() {
+	return this.unchangedCount.get();
+    }
+
+    /**
+     * @return the number of compilation units skipped as they were completed
+     *         by an interrupted batch
+     */
+    public int getSkippedCount() {
+	return this.skippedCount.get();
+    }
+
+    /**
+     * @return the number of compilation units which could not be sorted
+     */
+    public int getFailedCount() {
+	return this.failedCount.get();
+    }
+
+    /**
+     * @return the counters of the read, analyze and commit stages
+     */
+    public List<StageCounter> getStageCounters() {
+	return list(this.readStage, this.analyzeStage, this.commitStage);
+    }
+
+    /**
+     * @return the highest heap in bytes the ASTs were estimated to retain at
+     *         once, as admitted by the memory governor
+     */
+    public long getEstimatedPeakRetained() {
+	return this.memoryGovernor.getPeak();
+    }
+
+    /**
+     * @return the highest heap in bytes used by the whole JVM while the batch
+     *         ran, sampled whenever a result is committed or the commit stage
+     *         polls for one
+     */
+    public long getPeakHeapUsed() {
+	return this.peakHeapUsed;
+    }
+
+    private void sampleHeap() {
+	this.peakHeapUsed = Math.max(this.peakHeapUsed, this.memoryBean.getHeapMemoryUsage().getUsed());
+    }
+
+    /**
+     * Runs in the enumeration thread. Splits the enumerated compilation units
+     * into groups of consecutive compilation units of the same project and
+     * submits each group as soon as it is complete.
+     *
+     * @param scheduler
+     *            schedules the groups on the workers
+     */
+    private void enumerate(LargestFirstScheduler scheduler) {
+	try {
+	    List<ICompilationUnit> group = new ArrayList<ICompilationUnit>();
+	    IJavaProject project = null;
+	    Set<IJavaProject> prerequisites = null;
+	    while (!this.canceled) {
+		final long start = System.nanoTime();
+		final ICompilationUnit cu = this.enumerator.next();
+		if (cu == null)
+		    break;
+		this.readStage.record(1, System.nanoTime() - start);
+		final boolean projectChanged = project != null && !project.equals(cu.getJavaProject());
+		if (group.size() == this.groupSize || projectChanged) {
+		    submit(scheduler, group, prerequisites);
+		    group = new ArrayList<ICompilationUnit>();
+		}
+		if (projectChanged)
+		    scheduler.close(project);
+		if (project == null || projectChanged) {
+		    project = cu.getJavaProject();
+		    prerequisites = getPrerequisites(project);
+		}
+		group.add(cu);
+	    }
+	    if (!group.isEmpty())
+		submit(scheduler, group, prerequisites);
+	    if (project != null)
+		scheduler.close(project);
+	} catch (final InterruptedException e) {
+	    // canceled while waiting for memory
+	    Thread.currentThread().interrupt();
+	} catch (final JavaModelException e) {
+	    this.enumerationStatus = e.getStatus();
+	} catch (final RuntimeException e) {
+	    this.enumerationStatus = new Status(IStatus.ERROR, Activator.PLUGIN_ID,
+		    "Could not enumerate the compilation units", e);
+	} finally {
+	    this.enumerated = true;
+	}
+    }
+
+    /**
+     * @param project
+     * @return the projects the given project requires, directly or through
+     *         other projects
+     * @throws JavaModelException
+     */
+    private static Set<IJavaProject> getPrerequisites(IJavaProject project) throws JavaModelException {
+	final Set<IJavaProject> prerequisites = new HashSet<IJavaProject>();
+	final LinkedList<IJavaProject> pending = new LinkedList<IJavaProject>();
+	pending.add(project);
+	while (!pending.isEmpty()) {
+	    final IJavaProject required = pending.removeFirst();
+	    if (!required.exists())
+		continue;
+	    for (final String name : required.getRequiredProjectNames()) {
+		final IJavaProject prerequisite = project.getJavaModel().getJavaProject(name);
+		if (prerequisites.add(prerequisite))
+		    pending.add(prerequisite);
+	    }
+	}
+	prerequisites.remove(project);
+	return prerequisites;
+    }
+
+    /**
+     * Schedules the group once its estimated heap cost fits into the budget.
+     * The memory governor bounds the hand-off from the read stage to the
+     * analyze stage.
+     *
+     * @param scheduler
+     * @param group
+     * @param prerequisites
+     *            the projects required by the project of the group
+     * @throws InterruptedException
+     */
+    private void submit(LargestFirstScheduler scheduler, List<ICompilationUnit> group,
+	    Set<IJavaProject> prerequisites) throws InterruptedException {
+	final ICompilationUnit[] units = group.toArray(new ICompilationUnit[group.size()]);
+	final long start = System.nanoTime();
+	final long heapCost = MemoryGovernor.estimateCost(units);
+	final long cost = LargestFirstScheduler.estimateCost(units);
+	this.readStage.record(0, System.nanoTime() - start);
+	this.memoryGovernor.acquire(heapCost);
+	this.enumeratedCount.addAndGet(units.length);
+	scheduler.schedule(new Runnable() {
+	    @Override
+	    public void run() {
+		try {
+		    sort(units);
+		} finally {
+		    BatchSortJob.this.memoryGovernor.release(heapCost);
+		}
+	    }
+	}, cost, units[0].getJavaProject(), prerequisites);
+    }
+
+    /**
+     * Commits the results of the workers as they complete, until all
+     * enumerated compilation units are committed. Runs in the job thread inside
+     * the workspace operation. The operation does not hold a rule, as the
+     * workers need the rules of the files while they analyze them.
+     *
+     * @param status
+     *            collects the problems
+     * @param monitor
+     */
+    private void commitAll(MultiStatus status, IProgressMonitor monitor) {
+	monitor.beginTask(getName(), IProgressMonitor.UNKNOWN);
+	try {
+	    int committed = 0;
+	    while (!(this.enumerated && committed == this.enumeratedCount.get())) {
+		sampleHeap();
+		final SortResult result = poll(monitor);
+		if (result == null)
+		    continue;
+		monitor.subTask(result.cu.getElementName());
+		final long start = System.nanoTime();
+		final IStatus commitStatus = commit(result);
+		this.commitStage.record(1, System.nanoTime() - start);
+		if (!commitStatus.isOK())
+		    status.add(commitStatus);
+		committed++;
+		monitor.worked(1);
+	    }
+	} finally {
+	    monitor.done();
+	}
+    }
+
+    /**
+     * Waits a short time for the next completed compilation unit.
+     *
+     * @return the result of the completed compilation unit or null if there
+     *         was none
+     * @throws OperationCanceledException
+     *             if the job was canceled
+     */
+    private SortResult poll(IProgressMonitor monitor) {
+	if (monitor.isCanceled())
+	    throw new OperationCanceledException();
+	try {
+	    return this.results.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+	} catch (final InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new OperationCanceledException();
+	}
+    }
+
+    /**
+     * Runs in a worker thread. Parses the group holding the rules of the
+     * resources of its compilation units, unless in a dry run or in check mode
+     * which do not modify them, and reports one result per compilation unit, even if
+     * parsing fails or the job is canceled.
+     * Compilation units completed by an interrupted batch are not parsed.
+     * <p>
+     * The results are handed off to the commit stage only after the rules are
+     * released. The commit stage needs the rules itself, so it could not drain
+     * the bounded hand-off while a blocked worker holds them.
+     * <p>
+     * The results are handed off even if an error such as a StackOverflowError
+     * ends the worker, with a failed result for each pending compilation unit,
+     * as the commit stage waits for one result per enumerated unit.
+     *
+     * @param group
+     */
+    private void sort(ICompilationUnit[] group) {
+	final List<SortResult> groupResults = new ArrayList<SortResult>();
+	final Set<ICompilationUnit> pending = new HashSet<ICompilationUnit>(list(group));
+	final IJavaProject project = group[0].getJavaProject();
+	final IJobManager jobManager = Job.getJobManager();
+	final ISchedulingRule rule = this.dryRun || this.checkOnly ? null : getRule(group);
+	if (rule != null)
+	    jobManager.beginRule(rule, null);
+	final long start = System.nanoTime();
+	try {
+	    final List<ICompilationUnit> remaining = new ArrayList<ICompilationUnit>();
+	    for (final ICompilationUnit cu : group) {
+		if (isCheckpointed(cu)) {
+		    pending.remove(cu);
+		    this.skippedCount.incrementAndGet();
+		    groupResults.add(new SortResult(cu, Status.OK_STATUS));
+		} else {
+		    remaining.add(cu);
+		}
+	    }
+	    if (this.dryRun)
+		takePrecomputed(remaining, groupResults, pending);
+	    if (!remaining.isEmpty()) {
+		final ICompilationUnit[] units = remaining.toArray(new ICompilationUnit[remaining.size()]);
+		final Map options = project.getOptions(true);
+		ASTUtils.createASTs(units, project, new ASTRequestor() {
+		    @Override
+		    public void acceptAST(ICompilationUnit cu, CompilationUnit ast) {
+			groupResults.add(sort(cu, ast, options));
+			pending.remove(cu);
+		    }
+		}, new NullProgressMonitor() {
+		    @Override
+		    public boolean isCanceled() {
+			return BatchSortJob.this.canceled;
+		    }
+		});
+	    }
+	} catch (final RuntimeException e) {
+	    fail(pending, groupResults, e);
+	} catch (final Error e) {
+	    fail(pending, groupResults, e);
+	    throw e;
+	} finally {
+	    if (rule != null)
+		jobManager.endRule(rule);
+	    for (final ICompilationUnit cu : pending)
+		groupResults.add(new SortResult(cu, Status.CANCEL_STATUS));
+	    this.analyzeStage.record(group.length, System.nanoTime() - start);
+	    handOff(groupResults);
+	}
+    }
+
+    /**
+     * Adds a failed result for each pending compilation unit.
+     *
+     * @param pending
+     *            cleared afterwards
+     * @param groupResults
+     * @param e
+     */
+    private void fail(Set<ICompilationUnit> pending, List<SortResult> groupResults, Throwable e) {
+	for (final ICompilationUnit cu : pending)
+	    groupResults.add(new SortResult(cu, createErrorStatus(cu, e)));
+	pending.clear();
+    }
+
+    /**
+     * Passes the results to the commit stage, blocking while its hand-off is
+     * full.
+     *
+     * @param groupResults
+     */
+    private void handOff(List<SortResult> groupResults) {
+	try {
+	    for (final SortResult result : groupResults)
+		this.results.put(result);
+	} catch (final InterruptedException e) {
+	    // canceled, the commit stage stopped
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    /**
+     * Moves the compilation units whose ordering was precomputed for their
+     * current source from the remaining to the results.
+     *
+     * @param remaining
+     * @param groupResults
+     * @param pending
+     */
+    private void takePrecomputed(List<ICompilationUnit> remaining, List<SortResult> groupResults,
+	    Set<ICompilationUnit> pending) {
+	for (final Iterator<ICompilationUnit> iter = remaining.iterator(); iter.hasNext();) {
+	    final ICompilationUnit cu = iter.next();
+	    try {
+		final String source = cu.getSource();
+		final PrecomputedOrderings.Entry entry = PrecomputedOrderings.getDefault().peek(cu, source);
+		if (entry != null) {
+		    iter.remove();
+		    pending.remove(cu);
+		    groupResults.add(new SortResult(cu, source, entry.getEdit(), 0, true));
+		}
+	    } catch (final JavaModelException e) {
+		// calculated by the batch instead
+	    }
+	}
+    }
+
+    private boolean isCheckpointed(ICompilationUnit cu) {
+	if (this.checkpoint == null)
+	    return false;
+	try {
+	    return this.checkpoint.isCompleted(cu);
+	} catch (final JavaModelException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Calculates the edit of a single cu. In check mode only finds the first
+     * member out of order. A dry run calculates the edit only if a member is
+     * out of order.
+     *
+     * @param cu
+     * @param ast
+     * @param options
+     * @return the result to be committed
+     */
+    private SortResult sort(ICompilationUnit cu, CompilationUnit ast, Map options) {
+	if (this.canceled)
+	    return new SortResult(cu, Status.CANCEL_STATUS);
+	try {
+	    final long start = System.nanoTime();
+	    final IMethodSorter sorter = this.sorterFactory.create();
+	    if (this.checkOnly) {
+		final BodyDeclaration unsorted = sorter.findFirstUnsorted(ast);
+		return new SortResult(cu, unsorted == null ? null : UnsortedMember.create(cu.getPath().toString(),
+			ast, unsorted));
+	    }
+	    final String source = cu.getSource();
+	    final TextEdit edit = this.dryRun ? sorter.calculateEditIfUnsorted(ast, source, options) : sorter
+		    .calculateEdit(ast, source, options);
+	    return new SortResult(cu, source, edit, System.nanoTime() - start, false);
+	} catch (final JavaModelException e) {
+	    return new SortResult(cu, createErrorStatus(cu, e));
+	} catch (final RuntimeException e) {
+	    return new SortResult(cu, createErrorStatus(cu, e));
+	}
+    }
+
+    private static ISchedulingRule getRule(ICompilationUnit[] group) {
+	final List<ISchedulingRule> rules = new ArrayList<ISchedulingRule>();
+	for (final ICompilationUnit cu : group) {
+	    final IResource resource = cu.getResource();
+	    if (resource != null)
+		rules.add(ResourcesPlugin.getWorkspace().getRuleFactory().modifyRule(resource));
+	}
+	return MultiRule.combine(rules.toArray(new ISchedulingRule[rules.size()]));
+    }
+
+    /**
+     * Applies the edit of the result unless the cu was modified after the edit
+     * was calculated, and records the cu in the checkpoint. Only measures the
+     * impact of the edit in a dry run, and only records the unsorted member in
+     * check mode.
+     *
+     * @param result
+     * @return the status of sorting the cu
+     */
+    private IStatus commit(SortResult result) {
+	if (result.status != null)
+	    return result.status;
+	if (this.checkOnly) {
+	    if (result.unsorted != null) {
+		this.unsortedMembers.add(result.unsorted);
+		this.unsortedCount.incrementAndGet();
+	    } else {
+		this.unchangedCount.incrementAndGet();
+	    }
+	    return Status.OK_STATUS;
+	}
+	if (this.dryRun) {
+	    final SortImpact impact = SortImpact.create(result.cu, result.source, result.edit, result.analysisNanos,
+		    result.cached);
+	    this.impacts.add(impact);
+	    if (impact.isChanged())
+		this.unsortedCount.incrementAndGet();
+	    else
+		this.unchangedCount.incrementAndGet();
+	    return Status.OK_STATUS;
+	}
+	if (result.edit == null) {
+	    this.unchangedCount.incrementAndGet();
+	    return recordCheckpoint(result.cu, result.source);
+	}
+	final ICompilationUnit cu = result.cu;
+	try {
+	    cu.becomeWorkingCopy(null);
+	    try {
+		if (!result.source.equals(cu.getSource())) {
+		    this.failedCount.incrementAndGet();
+		    return new Status(IStatus.WARNING, Activator.PLUGIN_ID, cu.getElementName()
+			    + " was modified while sorting and has been skipped.");
+		}
+		cu.applyTextEdit(result.edit, null);
+		cu.commitWorkingCopy(true, null);
+		this.sortedCount.incrementAndGet();
+		return recordCheckpoint(cu, cu.getSource());
+	    } finally {
+		cu.discardWorkingCopy();
+	    }
+	} catch (final JavaModelException e) {
+	    return createErrorStatus(cu, e);
+	}
+    }
+
+    private IStatus recordCheckpoint(ICompilationUnit cu, String source) {
+	if (this.checkpoint == null)
+	    return Status.OK_STATUS;
+	try {
+	    this.checkpoint.complete(cu, source);
+	    return Status.OK_STATUS;
+	} catch (final IOException e) {
+	    return new Status(IStatus.WARNING, Activator.PLUGIN_ID, "Could not record " + cu.getElementName()
+		    + " in the checkpoint of the batch", e);
+	}
+    }
+
+    private IStatus createErrorStatus(ICompilationUnit cu, Throwable e) {
+	this.failedCount.incrementAndGet();
+	return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Could not sort " + cu.getElementName(), e);
+    }
+
+    /**
+     * The edit calculated by a worker for a cu, the unsorted member found in
+     * check mode, or the status if no edit could be calculated.
+     */
+    private static class SortResult {
+
+	private final ICompilationUnit cu;
+	private final String source;
+	private final TextEdit edit;
+	private final IStatus status;
+	private final long analysisNanos;
+	private final boolean cached;
+	private final UnsortedMember unsorted;
+
+	SortResult(ICompilationUnit cu, String source, TextEdit edit, long analysisNanos, boolean cached) {
+	    this.cu = cu;
+	    this.source = source;
+	    this.edit = edit;
+	    this.status = null;
+	    this.analysisNanos = analysisNanos;
+	    this.cached = cached;
+	    this.unsorted = null;
+	}
+
+	SortResult(ICompilationUnit cu, UnsortedMember unsorted) {
+	    this.cu = cu;
+	    this.source = null;
+	    this.edit = null;
+	    this.status = null;
+	    this.analysisNanos = 0;
+	    this.cached = false;
+	    this.unsorted = unsorted;
+	}
+
+	SortResult(ICompilationUnit cu, IStatus status) {
+	    this.cu = cu;
+	    this.source = null;
+	    this.edit = null;
+	    this.status = status;
+	    this.analysisNanos = 0;
+	    this.cached = false;
+	    this.unsorted = null;
+	}
+
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * Collects the compilation units contained in Java elements selected for
+ * batch processing.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class CompilationUnitCollector {
+
+    private CompilationUnitCollector() {
+	// not meant to be instantiated
+    }
+
+    /**
+     * @param elements
+     *            compilation units, package fragments, package fragment roots
+     *            or Java projects. Other elements are ignored.
+     * @return the compilation units contained in the elements
+     * @throws JavaModelException
+     * @see CompilationUnitEnumerator
+     */
+    public static List<ICompilationUnit> collect(IJavaElement[] elements) throws JavaModelException {
+	final List<ICompilationUnit> result = new ArrayList<ICompilationUnit>();
+	final CompilationUnitEnumerator enumerator = new CompilationUnitEnumerator(elements,
+		new CompilationUnitFilter());
+	ICompilationUnit cu;
+	while ((cu = enumerator.next()) != null)
+	    result.add(cu);
+	return result;
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspace.ProjectOrder;
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * Lazily enumerates the compilation units contained in Java elements selected
+ * for batch processing. The children of an element are requested only when the
+ * enumeration reaches it, so the first compilation unit is available without
+ * walking the whole project. Only source folders of the selected projects are
+ * visited, neither libraries nor the roots of referenced projects.
+ * <p>
+ * The selected elements are enumerated in the build order of their projects,
+ * so the compilation units of upstream projects come first. Compilation units
+ * of one project are enumerated consecutively if their elements were selected
+ * together.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class CompilationUnitEnumerator {
+
+    private final LinkedList<IJavaElement> pending = new LinkedList<IJavaElement>();
+    private final CompilationUnitFilter filter;
+
+    /**
+     * @param elements
+     *            compilation units, package fragments, package fragment roots
+     *            or Java projects. Other elements are ignored.
+     * @param filter
+     *            decides which compilation units are enumerated
+     */
+    public CompilationUnitEnumerator(IJavaElement[] elements, CompilationUnitFilter filter) {
+	super();
+	this.filter = filter;
+	push(sortByBuildOrder(elements));
+    }
+
+    /**
+     * @return the next compilation unit or null if there are no more
+     * @throws JavaModelException
+     */
+    public ICompilationUnit next() throws JavaModelException {
+	while (!this.pending.isEmpty()) {
+	    final IJavaElement element = this.pending.removeFirst();
+	    if (element instanceof ICompilationUnit) {
+		if (this.filter.accept((ICompilationUnit) element))
+		    return (ICompilationUnit) element;
+
+	    } else if (element instanceof IPackageFragment) {
+		push(((IPackageFragment) element).getCompilationUnits());
+
+	    } else if (element instanceof IPackageFragmentRoot) {
+		final IPackageFragmentRoot root = (IPackageFragmentRoot) element;
+		if (root.getKind() == IPackageFragmentRoot.K_SOURCE)
+		    push(root.getChildren());
+
+	    } else if (element instanceof IJavaProject) {
+		push(((IJavaProject) element).getPackageFragmentRoots());
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Stable sorts the elements by the build order of their projects.
+     *
+     * @param elements
+     * @return the sorted elements
+     */
+    private static IJavaElement[] sortByBuildOrder(IJavaElement[] elements) {
+	final Set<IProject> projects = new LinkedHashSet<IProject>();
+	for (final IJavaElement element : elements) {
+	    if (element.getJavaProject() != null)
+		projects.add(element.getJavaProject().getProject());
+	}
+	final ProjectOrder order = ResourcesPlugin.getWorkspace().computeProjectOrder(
+		projects.toArray(new IProject[projects.size()]));
+	final List<IProject> buildOrder = Arrays.asList(order.projects);
+
+	final List<IJavaElement> sorted = new ArrayList<IJavaElement>(Arrays.asList(elements));
+	Collections.sort(sorted, new Comparator<IJavaElement>() {
+	    @Override
+	    public int compare(IJavaElement element1, IJavaElement element2) {
+		return buildOrder.indexOf(getProject(element1)) - buildOrder.indexOf(getProject(element2));
+	    }
+	});
+	return sorted.toArray(new IJavaElement[sorted.size()]);
+    }
+
+    private static IProject getProject(IJavaElement element) {
+	return element.getJavaProject() == null ? null : element.getJavaProject().getProject();
+    }
+
+    /**
+     * Pushes the elements in front of the pending elements, keeping their
+     * order, so the enumeration is depth-first.
+     *
+     * @param elements
+     */
+    private void push(IJavaElement[] elements) {
+	for (int i = elements.length - 1; i >= 0; i--)
+	    this.pending.addFirst(elements[i]);
+    }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+
+/**
+ * Decides by include and exclude glob patterns which compilation units are
+ * sorted in batch. The patterns are matched against the path of a compilation
+ * unit relative to its project, e.g. <code>src/main/java/a/B.java</code>.
+ * <code>**</code> matches any number of directories, <code>*</code> any
+ * characters and <code>?</code> a single character within a path segment.
+ * <p>
+ * A compilation unit is accepted if it matches any include pattern, or if there
+ * are no include patterns, and matches no exclude pattern.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class CompilationUnitFilter {
+
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+
+    /**
+     * Creates a filter accepting all compilation units.
+     */
+    public CompilationUnitFilter() {
+	this(Collections.<String> emptyList(), Collections.<String> emptyList());
+    }
+
+    /**
+     * @param includes
+     *            glob patterns of the compilation units to be included
+     * @param excludes
+     *            glob patterns of the compilation units to be excluded
+     */
+    public CompilationUnitFilter(List<String> includes, List<String> excludes) {
+	super();
+	this.includes = compile(includes);
+	this.excludes = compile(excludes);
+    }
+
+    public boolean accept(ICompilationUnit cu) {
+	final String path = cu.getPath().removeFirstSegments(1).toString();
+	return (this.includes.isEmpty() || matches(this.includes, path)) && !matches(this.excludes, path);
+    }
+
+    private static boolean matches(List<Pattern> patterns, String path) {
+	for (final Pattern pattern : patterns) {
+	    if (pattern.matcher(path).matches())
+		return true;
+	}
+	return false;
+    }
+
+    private static List<Pattern> compile(List<String> globs) {
+	final List<Pattern> patterns = new ArrayList<Pattern>();
+	for (final String glob : globs)
+	    patterns.add(Pattern.compile(toRegex(glob)));
+	return patterns;
+    }
+
+    /**
+     * Translates a glob pattern into a regular expression.
+     *
+     * @param glob
+     * @return the regular expression
+     */
+    private static String toRegex(String glob) {
+	final StringBuilder regex = new StringBuilder();
+	int i = 0;
+	while (i < glob.length()) {
+	    final char c = glob.charAt(i);
+	    if (glob.startsWith("**/", i)) {
+		regex.append("(?:.*/)?");
+		i += 3;
+	    } else if (glob.startsWith("**", i)) {
+		regex.append(".*");
+		i += 2;
+	    } else if (c == '*') {
+		regex.append("[^/]*");
+		i++;
+	    } else if (c == '?') {
+		regex.append("[^/]");
+		i++;
+	    } else {
+		regex.append(Pattern.quote(String.valueOf(c)));
+		i++;
+	    }
+	}
+	return regex.toString();
+    }
+
+}
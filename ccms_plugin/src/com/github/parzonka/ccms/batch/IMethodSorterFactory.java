@@ -0,0 +1,27 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.batch;
+
+import com.github.parzonka.ccms.sorter.IMethodSorter;
+
+/**
+ * Creates method sorters. Sorters keep state while sorting a compilation unit,
+ * so every concurrently processed compilation unit needs its own instance.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public interface IMethodSorterFactory {
+
+    /**
+     * @return a new method sorter
+     */
+    public IMethodSorter create();
+
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.batch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+
+/**
+ * Runs batch work on a fixed number of threads, always starting the largest
+ * ready work first. The workers share one priority queue, so an idle worker
+ * takes the largest remaining work instead of waiting behind a long tail. The
+ * cost of sorting is dominated by a few large compilation units, which would
+ * otherwise determine the duration of the whole batch if they started last.
+ * <p>
+ * Work belongs to a project and may name the projects it depends on. It is
+ * ready once all work of these prerequisites has completed, so the cost only
+ * orders work among projects whose prerequisites are done and dependent
+ * projects never run concurrently. Until then it waits outside the queue. A
+ * project is done once it is closed and its scheduled work has completed.
+ * Prerequisites which never had work scheduled are not waited for.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class LargestFirstScheduler {
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Object, Integer> outstanding = new HashMap<Object, Integer>();
+    private final Set<Object> closed = new HashSet<Object>();
+    private final List<ScheduledWork> waiting = new ArrayList<ScheduledWork>();
+
+    /**
+     * @param threads
+     *            the number of worker threads
+     */
+    public LargestFirstScheduler(int threads) {
+	super();
+	this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+		new PriorityBlockingQueue<Runnable>());
+    }
+
+    /**
+     * Queues the given work once its prerequisites are done. Work of equal
+     * cost is started in the order it was scheduled.
+     *
+     * @param work
+     * @param cost
+     *            the estimated cost of the work, see
+     *            {@link #estimateCost(ICompilationUnit[])}
+     * @param project
+     *            the project the work belongs to, must not be closed
+     * @param prerequisites
+     *            the projects whose work has to complete first
+     */
+    public synchronized void schedule(Runnable work, long cost, Object project, Collection<?> prerequisites) {
+	final Integer count = this.outstanding.get(project);
+	this.outstanding.put(project, count == null ? 1 : count + 1);
+	final ScheduledWork scheduled = new ScheduledWork(work, cost, this.sequence.getAndIncrement(), project,
+		prerequisites);
+	if (isReady(scheduled))
+	    this.executor.execute(scheduled);
+	else
+	    this.waiting.add(scheduled);
+    }
+
+    /**
+     * Declares that no more work of the given project will be scheduled, so
+     * work depending on it can start once its scheduled work has completed.
+     *
+     * @param project
+     */
+    public synchronized void close(Object project) {
+	this.closed.add(project);
+	startReady();
+    }
+
+    /**
+     * Stops all workers and discards the pending work.
+     */
+    public synchronized void shutdownNow() {
+	this.waiting.clear();
+	this.executor.shutdownNow();
+    }
+
+    private synchronized void completed(ScheduledWork work) {
+	this.outstanding.put(work.project, this.outstanding.get(work.project) - 1);
+	startReady();
+    }
+
+    private void startReady() {
+	if (this.executor.isShutdown())
+	    return;
+	for (final Iterator<ScheduledWork> iter = this.waiting.iterator(); iter.hasNext();) {
+	    final ScheduledWork work = iter.next();
+	    if (isReady(work)) {
+		iter.remove();
+		this.executor.execute(work);
+	    }
+	}
+    }
+
+    private boolean isReady(ScheduledWork work) {
+	for (final Object prerequisite : work.prerequisites) {
+	    if (prerequisite.equals(work.project))
+		continue;
+	    final Integer count = this.outstanding.get(prerequisite);
+	    if (count != null && (count > 0 || !this.closed.contains(prerequisite)))
+		return false;
+	}
+	return true;
+    }
+
+    /**
+     * Estimates the cost of sorting the given compilation units from the sizes
+     * of their files. Neither opens their buffers nor builds their structure,
+     * so the estimate is cheap enough for the enumeration thread.
+     *
+     * @param compilationUnits
+     * @return the estimated cost
+     */
+    public static long estimateCost(ICompilationUnit[] compilationUnits) {
+	long cost = 0;
+	for (final ICompilationUnit cu : compilationUnits)
+	    cost += MemoryGovernor.getSourceLength(cu);
+	return cost;
+    }
+
+    /**
+     * Orders work by descending cost, then by the order it was scheduled.
+     */
+    private class ScheduledWork implements Runnable, Comparable<ScheduledWork> {
+
+	private final Runnable work;
+	private final long cost;
+	private final long sequence;
+	private final Object project;
+	private final Collection<?> prerequisites;
+
+	ScheduledWork(Runnable work, long cost, long sequence, Object project, Collection<?> prerequisites) {
+	    this.work = work;
+	    this.cost = cost;
+	    this.sequence = sequence;
+	    this.project = project;
+	    this.prerequisites = prerequisites;
+	}
+
+	@Override
+	public void run() {
+	    try {
+		this.work.run();
+	    } finally {
+		completed(this);
+	    }
+	}
+
+	@Override
+	public int compareTo(ScheduledWork other) {
+	    if (this.cost != other.cost)
+		return this.cost > other.cost ? -1 : 1;
+	    if (this.sequence != other.sequence)
+		return this.sequence < other.sequence ? -1 : 1;
+	    return 0;
+	}
+
+    }
+
+}
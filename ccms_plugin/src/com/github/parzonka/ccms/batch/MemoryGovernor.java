@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.batch;
+
+import java.io.File;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.ICompilationUnit;
+
+/**
+ * Bounds the heap retained by the ASTs and binding environments of a batch.
+ * Work is admitted only while the estimated retained size stays within the
+ * budget. The cost of a compilation unit is estimated from the length of its
+ * source, as an AST with resolved bindings grows roughly linearly with it.
+ * <p>
+ * A single piece of work is always admitted when nothing else is retained, so
+ * work exceeding the budget on its own does not block the batch forever.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class MemoryGovernor {
+
+    /**
+     * Estimated bytes of heap retained per character of source while an AST
+     * with resolved bindings is alive.
+     */
+    private static final long BYTES_PER_CHARACTER = 64;
+
+    /**
+     * Assumed source length when the length of a file is unknown.
+     */
+    private static final long DEFAULT_SOURCE_LENGTH = 16 * 1024;
+
+    private final long budget;
+    private long retained;
+    private long peak;
+
+    /**
+     * @param budget
+     *            the heap budget in bytes
+     */
+    public MemoryGovernor(long budget) {
+	super();
+	this.budget = budget;
+    }
+
+    /**
+     * Blocks until the given cost fits into the budget and adds it to the
+     * retained size.
+     *
+     * @param cost
+     *            the estimated size in bytes
+     * @throws InterruptedException
+     */
+    public synchronized void acquire(long cost) throws InterruptedException {
+	while (this.retained > 0 && this.retained + cost > this.budget)
+	    wait();
+	this.retained += cost;
+	this.peak = Math.max(this.peak, this.retained);
+    }
+
+    /**
+     * Removes the given cost from the retained size once the work it was
+     * acquired for is unreachable.
+     *
+     * @param cost
+     *            the size passed to {@link #acquire(long)}
+     */
+    public synchronized void release(long cost) {
+	this.retained -= cost;
+	notifyAll();
+    }
+
+    /**
+     * @return the highest estimated size in bytes retained at once
+     */
+    public synchronized long getPeak() {
+	return this.peak;
+    }
+
+    /**
+     * Estimates the heap retained while the AST of the given compilation units
+     * is alive. Reads the file sizes only, not the contents.
+     *
+     * @param compilationUnits
+     * @return the estimated size in bytes
+     */
+    public static long estimateCost(ICompilationUnit[] compilationUnits) {
+	long length = 0;
+	for (final ICompilationUnit cu : compilationUnits)
+	    length += getSourceLength(cu);
+	return length * BYTES_PER_CHARACTER;
+    }
+
+    /**
+     * @param cu
+     * @return the size of the file of the cu, or a default if it is unknown
+     */
+    static long getSourceLength(ICompilationUnit cu) {
+	final IResource resource = cu.getResource();
+	final IPath location = resource == null ? null : resource.getLocation();
+	if (location == null)
+	    return DEFAULT_SOURCE_LENGTH;
+	final long length = new File(location.toOSString()).length();
+	return length > 0 ? length : DEFAULT_SOURCE_LENGTH;
+    }
+
+}
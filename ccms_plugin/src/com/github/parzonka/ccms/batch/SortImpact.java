@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.batch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.text.edits.MoveSourceEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.text.edits.TextEditVisitor;
+
+/**
+ * Describes how sorting would change a compilation unit, as calculated by a dry
+ * run of a batch.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class SortImpact {
+
+    private final ICompilationUnit compilationUnit;
+    private final int movedMembers;
+    private final int movedLines;
+    private final long analysisMillis;
+    private final boolean cached;
+
+    private SortImpact(ICompilationUnit compilationUnit, int movedMembers, int movedLines, long analysisMillis,
+	    boolean cached) {
+	this.compilationUnit = compilationUnit;
+	this.movedMembers = movedMembers;
+	this.movedLines = movedLines;
+	this.analysisMillis = analysisMillis;
+	this.cached = cached;
+    }
+
+    /**
+     * Measures the impact of the edit sorting a cu. Each member which is not
+     * at its place is moved by its own {@link MoveSourceEdit}.
+     *
+     * @param cu
+     * @param source
+     *            the source the edit was calculated on
+     * @param edit
+     *            the edit or null if the cu is sorted
+     * @param analysisNanos
+     *            the time spent calculating the edit
+     * @param cached
+     *            true, if the edit was precomputed and not calculated by the
+     *            batch
+     * @return the impact
+     */
+    public static SortImpact create(ICompilationUnit cu, final String source, TextEdit edit, long analysisNanos,
+	    boolean cached) {
+	final int[] moved = new int[2];
+	if (edit != null) {
+	    edit.accept(new TextEditVisitor() {
+		@Override
+		public boolean visit(MoveSourceEdit moveSource) {
+		    moved[0]++;
+		    moved[1] += countLines(source, moveSource.getOffset(), moveSource.getLength());
+		    return true;
+		}
+	    });
+	}
+	return new SortImpact(cu, moved[0], moved[1], TimeUnit.NANOSECONDS.toMillis(analysisNanos), cached);
+    }
+
+    private static int countLines(String source, int offset, int length) {
+	int lines = 1;
+	for (int i = offset; i < offset + length && i < source.length(); i++) {
+	    if (source.charAt(i) == '\n')
+		lines++;
+	}
+	return lines;
+    }
+
+    public ICompilationUnit getCompilationUnit() {
+	return this.compilationUnit;
+    }
+
+    /**
+     * @return the number of members which would be moved
+     */
+    public int getMovedMembers() {
+	return this.movedMembers;
+    }
+
+    /**
+     * @return the number of lines which would be moved. A diff of the sorted
+     *         compilation unit removes and adds each of them.
+     */
+    public int getMovedLines() {
+	return this.movedLines;
+    }
+
+    public long getAnalysisMillis() {
+	return this.analysisMillis;
+    }
+
+    /**
+     * @return true, if the ordering was precomputed while editing
+     */
+    public boolean isCached() {
+	return this.cached;
+    }
+
+    public boolean isChanged() {
+	return this.movedMembers > 0;
+    }
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.batch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the compilation units passing a stage of the batch pipeline and the
+ * time the threads of the stage were busy with them, excluding the time spent
+ * waiting for input or for the next stage.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class StageCounter {
+
+    private final String name;
+    private final AtomicLong units = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    public StageCounter(String name) {
+	super();
+	this.name = name;
+    }
+
+    /**
+     * May be called concurrently by the threads of the stage.
+     *
+     * @param processedUnits
+     *            the number of compilation units processed
+     * @param nanos
+     *            the time spent processing them
+     */
+    public void record(int processedUnits, long nanos) {
+	this.units.addAndGet(processedUnits);
+	this.busyNanos.addAndGet(nanos);
+    }
+
+    public String getName() {
+	return this.name;
+    }
+
+    public long getUnits() {
+	return this.units.get();
+    }
+
+    public long getBusyMillis() {
+	return TimeUnit.NANOSECONDS.toMillis(this.busyNanos.get());
+    }
+
+    /**
+     * @return the compilation units processed per second of busy time of a
+     *         single thread of the stage
+     */
+    public double getThroughput() {
+	final long nanos = this.busyNanos.get();
+	return nanos == 0 ? 0 : this.units.get() * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+	return String.format("%s: %d units, %.1f units/s", this.name, getUnits(), getThroughput());
+    }
+
+}
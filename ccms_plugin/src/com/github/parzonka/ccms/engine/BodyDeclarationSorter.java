@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *     Alex Blewitt - alex_blewitt@yahoo.com https://bugs.eclipse.org/bugs/show_bug.cgi?id=171066
+ *******************************************************************************/
+package com.github.parzonka.ccms.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.*;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+import org.eclipse.jface.text.Document;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.text.edits.TextEditGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.parzonka.ccms.sorter.comparator.BodyDeclarationComparator;
+import com.github.parzonka.ccms.sorter.comparator.Signature;
+
+/**
+ * Sorts the body declarations of an AST. Extracted from the
+ * {@link SortElementsOperation}, so sorting depends on the DOM only and runs
+ * without the Java model, e.g. on ASTs parsed from plain files.
+ * <p>
+ * The AST is not modified, neither structurally nor by setting node
+ * properties, as it may be shared with other clients, e.g. by the
+ * SharedASTProvider, and may be sorted by several threads at once. The
+ * comparator preserves the relative order of body declarations by their start
+ * positions.
+ * <p>
+ * A list of body declarations containing a malformed one, e.g. due to a
+ * syntax error, cannot be ordered reliably. Sorting and checking fail with an
+ * {@link IllegalStateException} then, so such a unit is neither reported as
+ * sorted nor left unchanged silently.
+ */
+public class BodyDeclarationSorter {
+
+    final private static Logger logger = LoggerFactory.getLogger(BodyDeclarationSorter.class);
+
+    private final Comparator<BodyDeclaration> comparator;
+
+    /**
+     * @param comparator
+     *            the comparator capable of ordering
+     *            <code>BodyDeclaration</code>s
+     */
+    public BodyDeclarationSorter(Comparator<BodyDeclaration> comparator) {
+	this.comparator = comparator;
+    }
+
+    /**
+     * Calculates the required text edits to sort the <code>unit</code> which
+     * was created from the given <code>source</code>.
+     *
+     * @param unit
+     * @param source
+     *            the source the unit was created from
+     * @param options
+     *            the formatter options used by the rewrite
+     * @param group
+     * @return the edit or null if no sorting is required
+     * @throws IllegalStateException
+     *             if the AST contains a malformed body declaration
+     */
+    public TextEdit calculateEdit(CompilationUnit unit, String source, Map options, TextEditGroup group) {
+	final ASTRewrite rewrite = createRewrite(unit, group);
+	if (rewrite == null) {
+	    return null;
+	}
+	final Document document = new Document(source);
+	return rewrite.rewriteAST(document, options);
+    }
+
+    /**
+     * @param elements
+     * @throws IllegalStateException
+     *             if one of the elements is malformed
+     */
+    private void checkWellFormed(List<? extends ASTNode> elements) {
+	for (final ASTNode element : elements) {
+	    if (isMalformed(element))
+		throw new IllegalStateException("Malformed declaration at line " + getLineNumber(element));
+	}
+    }
+
+    private static int getLineNumber(ASTNode node) {
+	final ASTNode root = node.getRoot();
+	if (root instanceof CompilationUnit)
+	    return ((CompilationUnit) root).getLineNumber(node.getStartPosition());
+	return -1;
+    }
+
+    protected boolean isMalformed(ASTNode node) {
+	return (node.getFlags() & ASTNode.MALFORMED) != 0;
+    }
+
+    /**
+     * Checks whether the body declarations of the given AST are sorted without
+     * creating a rewrite. The target order of each list of body declarations
+     * is calculated as for the rewrite and compared with the current order,
+     * stopping at the first body declaration which is out of place.
+     *
+     * @param ast
+     * @return the first body declaration whose position differs from the
+     *         target order, or null if the AST is sorted
+     * @throws IllegalStateException
+     *             if the AST contains a malformed body declaration
+     */
+    public BodyDeclaration findFirstUnsorted(CompilationUnit ast) {
+	final BodyDeclaration[] unsorted = new BodyDeclaration[1];
+	ast.accept(new ASTVisitor() {
+
+	    /**
+	     * Compares the elements with the target order. The comparator does
+	     * not have to be transitive, so comparing neighbors is not enough.
+	     */
+	    private boolean checkElements(List<? extends BodyDeclaration> elements) {
+		checkWellFormed(elements);
+		final List<BodyDeclaration> sorted = new ArrayList<BodyDeclaration>(elements);
+		Collections.sort(sorted, BodyDeclarationSorter.this.comparator);
+		for (int i = 0; i < elements.size(); i++) {
+		    if (elements.get(i) != sorted.get(i)) {
+			unsorted[0] = elements.get(i);
+			return false;
+		    }
+		}
+		return true;
+	    }
+
+	    @Override
+	    public boolean preVisit2(ASTNode node) {
+		return unsorted[0] == null;
+	    }
+
+	    @Override
+	    public boolean visit(CompilationUnit compilationUnit) {
+		return checkElements(compilationUnit.types());
+	    }
+
+	    @Override
+	    public boolean visit(AnnotationTypeDeclaration annotationTypeDeclaration) {
+		return checkElements(annotationTypeDeclaration.bodyDeclarations());
+	    }
+
+	    @Override
+	    public boolean visit(AnonymousClassDeclaration anonymousClassDeclaration) {
+		return checkElements(anonymousClassDeclaration.bodyDeclarations());
+	    }
+
+	    @Override
+	    public boolean visit(TypeDeclaration typeDeclaration) {
+		return checkElements(typeDeclaration.bodyDeclarations());
+	    }
+
+	    @Override
+	    public boolean visit(EnumDeclaration enumDeclaration) {
+		return checkElements(enumDeclaration.bodyDeclarations())
+			&& checkElements(enumDeclaration.enumConstants());
+	    }
+	});
+	return unsorted[0];
+    }
+
+    /**
+     * Creates the rewrite sorting the body declarations of the given AST.
+     *
+     * @param ast
+     * @param group
+     *            the text edit group to use when generating text edits, or
+     *            <code>null</code>
+     * @return the rewrite or null if no sorting is required
+     * @throws IllegalStateException
+     *             if the AST contains a malformed body declaration
+     */
+    public ASTRewrite createRewrite(CompilationUnit ast, final TextEditGroup group) {
+	final ASTRewrite rewriter = ASTRewrite.create(ast.getAST());
+	final boolean[] hasChanges = new boolean[] { false };
+
+	ast.accept(new ASTVisitor() {
+
+	    /**
+	     * This
+	     *
+	     * @param elements
+	     * @param listRewrite
+	     */
+	    private void sortElements(List<BodyDeclaration> elements, ListRewrite listRewrite) {
+		if (elements.size() == 0)
+		    return;
+
+		final List<BodyDeclaration> myCopy = new ArrayList<BodyDeclaration>();
+		myCopy.addAll(elements);
+
+		// orderexperiment
+		if (logger.isDebugEnabled()) {
+		    final List<Signature> methods = new ArrayList<Signature>();
+		    for (final BodyDeclaration bd : myCopy) {
+			if (bd.getNodeType() == ASTNode.METHOD_DECLARATION) {
+			    methods.add(new Signature((MethodDeclaration) bd));
+			}
+		    }
+		    Collections.sort(methods, ((BodyDeclarationComparator) BodyDeclarationSorter.this.comparator)
+			    .getMethodDeclarationComparator());
+		    logger.debug("Sorting of methods based on appearance:");
+		    int j = 0;
+		    for (final Signature sig : methods) {
+			logger.debug("Method [{}] : {}", ++j, sig);
+		    }
+		}
+
+		Collections.sort(myCopy, BodyDeclarationSorter.this.comparator);
+
+		if (logger.isTraceEnabled()) {
+		    logger.trace("Final sorting order just before the AST-Rewrite:");
+		    for (final BodyDeclaration bd : myCopy) {
+			if (bd.getNodeType() == ASTNode.METHOD_DECLARATION) {
+			    logger.trace("{}", new Signature((MethodDeclaration) bd));
+			} else {
+			    logger.trace("{}", bd.toString());
+			}
+		    }
+		}
+
+		for (int i = 0; i < elements.size(); i++) {
+		    final BodyDeclaration oldNode = elements.get(i);
+
+		    final BodyDeclaration newNode = myCopy.get(i);
+
+		    if (oldNode != newNode) {
+			if (oldNode.getNodeType() == ASTNode.METHOD_DECLARATION
+				&& newNode.getNodeType() == ASTNode.METHOD_DECLARATION) {
+			    final Signature oldMethodSignature = new Signature((MethodDeclaration) oldNode);
+			    final Signature newMethodSignature = new Signature((MethodDeclaration) newNode);
+			    logger.trace("Swapping [{}] for [{}]", oldMethodSignature, newMethodSignature);
+			} else {
+			    logger.trace("Swapping [{}] for [{}]", oldNode.getNodeType(), newNode.getNodeType());
+			}
+			listRewrite.replace(oldNode, rewriter.createMoveTarget(newNode), group);
+			hasChanges[0] = true;
+		    }
+		}
+	    }
+
+	    @Override
+	    public boolean visit(CompilationUnit compilationUnit) {
+		checkWellFormed(compilationUnit.types());
+		sortElements(compilationUnit.types(), rewriter.getListRewrite(compilationUnit,
+			CompilationUnit.TYPES_PROPERTY));
+		return true;
+	    }
+
+	    @Override
+	    public boolean visit(AnnotationTypeDeclaration annotationTypeDeclaration) {
+		checkWellFormed(annotationTypeDeclaration.bodyDeclarations());
+		sortElements(annotationTypeDeclaration.bodyDeclarations(), rewriter.getListRewrite(
+			annotationTypeDeclaration, AnnotationTypeDeclaration.BODY_DECLARATIONS_PROPERTY));
+		return true;
+	    }
+
+	    @Override
+	    public boolean visit(AnonymousClassDeclaration anonymousClassDeclaration) {
+		checkWellFormed(anonymousClassDeclaration.bodyDeclarations());
+		sortElements(anonymousClassDeclaration.bodyDeclarations(), rewriter.getListRewrite(
+			anonymousClassDeclaration, AnonymousClassDeclaration.BODY_DECLARATIONS_PROPERTY));
+		return true;
+	    }
+
+	    @Override
+	    public boolean visit(TypeDeclaration typeDeclaration) {
+		checkWellFormed(typeDeclaration.bodyDeclarations());
+		sortElements(typeDeclaration.bodyDeclarations(),
+			rewriter.getListRewrite(typeDeclaration, TypeDeclaration.BODY_DECLARATIONS_PROPERTY));
+		return true;
+	    }
+
+	    @Override
+	    public boolean visit(EnumDeclaration enumDeclaration) {
+		checkWellFormed(enumDeclaration.bodyDeclarations());
+		checkWellFormed(enumDeclaration.enumConstants());
+		sortElements(enumDeclaration.bodyDeclarations(),
+			rewriter.getListRewrite(enumDeclaration, EnumDeclaration.BODY_DECLARATIONS_PROPERTY));
+		sortElements(enumDeclaration.enumConstants(),
+			rewriter.getListRewrite(enumDeclaration, EnumDeclaration.ENUM_CONSTANTS_PROPERTY));
+		return true;
+	    }
+	});
+
+	if (!hasChanges[0])
+	    return null;
+
+	return rewriter;
+    }
+
+}
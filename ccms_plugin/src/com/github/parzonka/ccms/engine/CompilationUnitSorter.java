@@ -14,6 +14,7 @@ package com.github.parzonka.ccms.engine;
  *******************************************************************************/
 
 import java.util.Comparator;
+import java.util.Map;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.core.ICompilationUnit;
@@ -49,13 +50,8 @@ public final class CompilationUnitSorter {
      */
     @Deprecated
     private static void checkASTLevel(int level) {
-	switch (level) {
-	case AST.JLS2:
-	case AST.JLS3:
-	    break;
-	default:
+	if (level < AST.JLS2 || level > AST.getJLSLatest())
 	    throw new IllegalArgumentException();
-	}
     }
 
     /**
@@ -85,7 +81,12 @@ public final class CompilationUnitSorter {
      *
      * @see #sort(ICompilationUnit, int[], Comparator, int, IProgressMonitor)
      * @see org.eclipse.jdt.core.dom.BodyDeclaration
+     * @deprecated the property is not attached any more, as the sorted AST may
+     *             be shared with other clients and must not be modified.
+     *             Compare the start positions of the body declarations to
+     *             preserve their original order.
      */
+    @Deprecated
     public static final String RELATIVE_ORDER = "relativeOrder"; //$NON-NLS-1$
 
     /**
@@ -466,8 +467,63 @@ public final class CompilationUnitSorter {
 	if (unit == null || comparator == null) {
 	    throw new IllegalArgumentException();
 	}
-	final SortElementsOperation operation = new SortElementsOperation(AST.JLS3,
+	final SortElementsOperation operation = new SortElementsOperation(unit.getAST().apiLevel(),
 		new IJavaElement[] { unit.getJavaElement() }, null, comparator);
 	return operation.calculateEdit(unit, group);
     }
+
+    /**
+     * Reorders the declarations of the given AST, which was created from the
+     * given source. Behaves like
+     * {@link #sort(CompilationUnit, Comparator, int, TextEditGroup, IProgressMonitor)}
+     * but does not require the AST to be created from an
+     * <code>ICompilationUnit</code>, so snapshots of a buffer can be sorted
+     * while the buffer itself is modified.
+     *
+     * @param unit
+     *            the CompilationUnit to sort
+     * @param source
+     *            the source the unit was created from
+     * @param options
+     *            the formatter options used when generating text edits
+     * @param comparator
+     *            the comparator capable of ordering
+     *            <code>BodyDeclaration</code>s
+     * @param group
+     *            the text edit group to use when generating text edits, or
+     *            <code>null</code>
+     * @return a TextEdit describing the required edits to do the sort, or
+     *         <code>null</code> if sorting is not required
+     * @exception IllegalArgumentException
+     *                if the given unit, source or comparator is null.
+     */
+    public static TextEdit sort(CompilationUnit unit, String source, Map options,
+	    Comparator<BodyDeclaration> comparator, TextEditGroup group) {
+	if (unit == null || source == null || comparator == null) {
+	    throw new IllegalArgumentException();
+	}
+	return new BodyDeclarationSorter(comparator).calculateEdit(unit, source, options, group);
+    }
+
+    /**
+     * Checks whether the declarations of the given AST are sorted according to
+     * the specified comparator. Neither creates a rewrite nor text edits, and
+     * stops at the first declaration which is out of order.
+     *
+     * @param unit
+     *            the CompilationUnit to check
+     * @param comparator
+     *            the comparator capable of ordering
+     *            <code>BodyDeclaration</code>s
+     * @return the first declaration which the comparator orders before its
+     *         predecessor, or <code>null</code> if sorting is not required
+     * @exception IllegalArgumentException
+     *                if the given unit or comparator is null.
+     */
+    public static BodyDeclaration findFirstUnsorted(CompilationUnit unit, Comparator<BodyDeclaration> comparator) {
+	if (unit == null || comparator == null) {
+	    throw new IllegalArgumentException();
+	}
+	return new BodyDeclarationSorter(comparator).findFirstUnsorted(unit);
+    }
 }
@@ -11,11 +11,8 @@
  *******************************************************************************/
 package com.github.parzonka.ccms.engine;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jdt.core.IBuffer;
 import org.eclipse.jdt.core.ICompilationUnit;
@@ -26,8 +23,6 @@ import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.core.dom.*;
 import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
-import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
-import org.eclipse.jdt.core.util.CompilationUnitSorter;
 import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
 import org.eclipse.jdt.internal.core.CompilationUnit;
 import org.eclipse.jdt.internal.core.JavaModelOperation;
@@ -38,20 +33,13 @@ import org.eclipse.jface.text.Document;
 import org.eclipse.text.edits.RangeMarker;
 import org.eclipse.text.edits.TextEdit;
 import org.eclipse.text.edits.TextEditGroup;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.github.parzonka.ccms.sorter.comparator.BodyDeclarationComparator;
-import com.github.parzonka.ccms.sorter.comparator.Signature;
 
 /**
  * Version of org.eclipse.jdt.internal.core.SortElementsOperation including
- * logging.
+ * logging. The sorting itself is done by the {@link BodyDeclarationSorter},
+ * which does not depend on the Java model.
  */
 public class SortElementsOperation extends JavaModelOperation {
-    public static final String CONTAINS_MALFORMED_NODES = "malformed"; //$NON-NLS-1$
-
-    final private static Logger logger = LoggerFactory.getLogger(SortElementsOperation.class);
 
     private final Comparator<BodyDeclaration> comparator;
     private final int[] positions;
@@ -84,17 +72,6 @@ public class SortElementsOperation extends JavaModelOperation {
 	return this.elementsToProcess.length;
     }
 
-    boolean checkMalformedNodes(ASTNode node) {
-	final Object property = node.getProperty(CONTAINS_MALFORMED_NODES);
-	if (property == null)
-	    return false;
-	return ((Boolean) property).booleanValue();
-    }
-
-    protected boolean isMalformed(ASTNode node) {
-	return (node.getFlags() & ASTNode.MALFORMED) != 0;
-    }
-
     /**
      * @see org.eclipse.jdt.internal.core.JavaModelOperation#executeOperation()
      */
@@ -134,18 +111,29 @@ public class SortElementsOperation extends JavaModelOperation {
 	    throw new JavaModelException(new JavaModelStatus(IJavaModelStatusConstants.INVALID_ELEMENT_TYPES,
 		    this.elementsToProcess[0]));
 
+	final ICompilationUnit cu = (ICompilationUnit) this.elementsToProcess[0];
+	return calculateEdit(unit, cu.getBuffer().getContents(), cu.getJavaProject().getOptions(true), group);
+    }
+
+    /**
+     * Calculates the required text edits to sort the <code>unit</code> which
+     * was created from the given <code>source</code>. The unit does not need
+     * to be created from an element of this operation, so snapshots of a
+     * buffer can be sorted while the buffer itself is modified.
+     *
+     * @param unit
+     * @param source
+     *            the source the unit was created from
+     * @param options
+     *            the formatter options used by the rewrite
+     * @param group
+     * @return the edit or null if no sorting is required
+     */
+    public TextEdit calculateEdit(org.eclipse.jdt.core.dom.CompilationUnit unit, String source, Map options,
+	    TextEditGroup group) {
 	try {
 	    beginTask(Messages.operation_sortelements, getMainAmountOfWork());
-
-	    final ICompilationUnit cu = (ICompilationUnit) this.elementsToProcess[0];
-	    final String content = cu.getBuffer().getContents();
-	    final ASTRewrite rewrite = sortCompilationUnit(unit, group);
-	    if (rewrite == null) {
-		return null;
-	    }
-
-	    final Document document = new Document(content);
-	    return rewrite.rewriteAST(document, cu.getJavaProject().getOptions(true));
+	    return new BodyDeclarationSorter(this.comparator).calculateEdit(unit, source, options, group);
 	} finally {
 	    done();
 	}
@@ -168,7 +156,7 @@ public class SortElementsOperation extends JavaModelOperation {
 	final org.eclipse.jdt.core.dom.CompilationUnit ast = (org.eclipse.jdt.core.dom.CompilationUnit) parser
 		.createAST(null);
 
-	final ASTRewrite rewriter = sortCompilationUnit(ast, null);
+	final ASTRewrite rewriter = new BodyDeclarationSorter(this.comparator).createRewrite(ast, null);
 	if (rewriter == null)
 	    return document.get();
 
@@ -195,211 +183,6 @@ public class SortElementsOperation extends JavaModelOperation {
 	return document.get();
     }
 
-    private ASTRewrite sortCompilationUnit(org.eclipse.jdt.core.dom.CompilationUnit ast, final TextEditGroup group) {
-	ast.accept(new ASTVisitor() {
-	    @Override
-	    public boolean visit(org.eclipse.jdt.core.dom.CompilationUnit compilationUnit) {
-		final List<AbstractTypeDeclaration> types = compilationUnit.types();
-		for (final Iterator<AbstractTypeDeclaration> iter = types.iterator(); iter.hasNext();) {
-		    final AbstractTypeDeclaration typeDeclaration = iter.next();
-		    typeDeclaration.setProperty(CompilationUnitSorter.RELATIVE_ORDER,
-			    new Integer(typeDeclaration.getStartPosition()));
-		    compilationUnit.setProperty(CONTAINS_MALFORMED_NODES, Boolean.valueOf(isMalformed(typeDeclaration)));
-		}
-		return true;
-	    }
-
-	    @Override
-	    public boolean visit(AnnotationTypeDeclaration annotationTypeDeclaration) {
-		final List bodyDeclarations = annotationTypeDeclaration.bodyDeclarations();
-		for (final Iterator iter = bodyDeclarations.iterator(); iter.hasNext();) {
-		    final BodyDeclaration bodyDeclaration = (BodyDeclaration) iter.next();
-		    bodyDeclaration.setProperty(CompilationUnitSorter.RELATIVE_ORDER,
-			    new Integer(bodyDeclaration.getStartPosition()));
-		    annotationTypeDeclaration.setProperty(CONTAINS_MALFORMED_NODES,
-			    Boolean.valueOf(isMalformed(bodyDeclaration)));
-		}
-		return true;
-	    }
-
-	    @Override
-	    public boolean visit(AnonymousClassDeclaration anonymousClassDeclaration) {
-		final List bodyDeclarations = anonymousClassDeclaration.bodyDeclarations();
-		for (final Iterator iter = bodyDeclarations.iterator(); iter.hasNext();) {
-		    final BodyDeclaration bodyDeclaration = (BodyDeclaration) iter.next();
-		    bodyDeclaration.setProperty(CompilationUnitSorter.RELATIVE_ORDER,
-			    new Integer(bodyDeclaration.getStartPosition()));
-		    anonymousClassDeclaration.setProperty(CONTAINS_MALFORMED_NODES,
-			    Boolean.valueOf(isMalformed(bodyDeclaration)));
-		}
-		return true;
-	    }
-
-	    @Override
-	    public boolean visit(TypeDeclaration typeDeclaration) {
-		final List bodyDeclarations = typeDeclaration.bodyDeclarations();
-		for (final Iterator iter = bodyDeclarations.iterator(); iter.hasNext();) {
-		    final BodyDeclaration bodyDeclaration = (BodyDeclaration) iter.next();
-		    bodyDeclaration.setProperty(CompilationUnitSorter.RELATIVE_ORDER,
-			    new Integer(bodyDeclaration.getStartPosition()));
-		    typeDeclaration.setProperty(CONTAINS_MALFORMED_NODES, Boolean.valueOf(isMalformed(bodyDeclaration)));
-		}
-		return true;
-	    }
-
-	    @Override
-	    public boolean visit(EnumDeclaration enumDeclaration) {
-		final List bodyDeclarations = enumDeclaration.bodyDeclarations();
-		for (final Iterator iter = bodyDeclarations.iterator(); iter.hasNext();) {
-		    final BodyDeclaration bodyDeclaration = (BodyDeclaration) iter.next();
-		    bodyDeclaration.setProperty(CompilationUnitSorter.RELATIVE_ORDER,
-			    new Integer(bodyDeclaration.getStartPosition()));
-		    enumDeclaration.setProperty(CONTAINS_MALFORMED_NODES, Boolean.valueOf(isMalformed(bodyDeclaration)));
-		}
-		final List enumConstants = enumDeclaration.enumConstants();
-		for (final Iterator iter = enumConstants.iterator(); iter.hasNext();) {
-		    final EnumConstantDeclaration enumConstantDeclaration = (EnumConstantDeclaration) iter.next();
-		    enumConstantDeclaration.setProperty(CompilationUnitSorter.RELATIVE_ORDER, new Integer(
-			    enumConstantDeclaration.getStartPosition()));
-		    enumDeclaration.setProperty(CONTAINS_MALFORMED_NODES,
-			    Boolean.valueOf(isMalformed(enumConstantDeclaration)));
-		}
-		return true;
-	    }
-	});
-
-	final ASTRewrite rewriter = ASTRewrite.create(ast.getAST());
-	final boolean[] hasChanges = new boolean[] { false };
-
-	ast.accept(new ASTVisitor() {
-
-	    /**
-	     * This
-	     *
-	     * @param elements
-	     * @param listRewrite
-	     */
-	    private void sortElements(List<BodyDeclaration> elements, ListRewrite listRewrite) {
-		if (elements.size() == 0)
-		    return;
-
-		final List<BodyDeclaration> myCopy = new ArrayList<BodyDeclaration>();
-		myCopy.addAll(elements);
-
-		// orderexperiment
-		final List<Signature> methods = new ArrayList<Signature>();
-		for (final BodyDeclaration bd : myCopy) {
-		    if (bd.getNodeType() == ASTNode.METHOD_DECLARATION) {
-			methods.add(new Signature((MethodDeclaration) bd));
-		    }
-		}
-		Collections.sort(methods, ((BodyDeclarationComparator) SortElementsOperation.this.comparator)
-			.getMethodDeclarationComparator());
-		logger.info("Sorting of methods based on appearance:");
-		int j = 0;
-		for (final Signature sig : methods) {
-		    logger.info("Method [{}] : {}", ++j, sig);
-		}
-
-		Collections.sort(myCopy, SortElementsOperation.this.comparator);
-
-		logger.info("Final sorting order just before the AST-Rewrite:");
-		for(final BodyDeclaration bd : myCopy) {
-		    if (bd.getNodeType() == ASTNode.METHOD_DECLARATION) {
-			logger.info("{}", new Signature((MethodDeclaration) bd));
-		    } else {
-			logger.info("{}", bd.toString());
-		    }
-		}
-
-		for (int i = 0; i < elements.size(); i++) {
-		    final BodyDeclaration oldNode = elements.get(i);
-
-		    final BodyDeclaration newNode = myCopy.get(i);
-
-		    if (oldNode != newNode) {
-			if (oldNode.getNodeType() == ASTNode.METHOD_DECLARATION
-				&& newNode.getNodeType() == ASTNode.METHOD_DECLARATION) {
-			    final Signature oldMethodSignature = new Signature((MethodDeclaration) oldNode);
-			    final Signature newMethodSignature = new Signature((MethodDeclaration) newNode);
-			    logger.trace("Swapping [{}] for [{}]", oldMethodSignature, newMethodSignature);
-			} else {
-			    logger.trace("Swapping [{}] for [{}]", oldNode.getNodeType(), newNode.getNodeType());
-			}
-			listRewrite.replace(oldNode, rewriter.createMoveTarget(newNode), group);
-			hasChanges[0] = true;
-		    }
-		}
-	    }
-
-	    @Override
-	    public boolean visit(org.eclipse.jdt.core.dom.CompilationUnit compilationUnit) {
-		if (checkMalformedNodes(compilationUnit)) {
-		    logger.warn("Malformed nodes. Aborting sorting of current element.");
-		    return true;
-		}
-
-		sortElements(compilationUnit.types(), rewriter.getListRewrite(compilationUnit,
-			org.eclipse.jdt.core.dom.CompilationUnit.TYPES_PROPERTY));
-		return true;
-	    }
-
-	    @Override
-	    public boolean visit(AnnotationTypeDeclaration annotationTypeDeclaration) {
-		if (checkMalformedNodes(annotationTypeDeclaration)) {
-		    logger.warn("Malformed nodes. Aborting sorting of current element.");
-		    return true;
-		}
-
-		sortElements(annotationTypeDeclaration.bodyDeclarations(), rewriter.getListRewrite(
-			annotationTypeDeclaration, AnnotationTypeDeclaration.BODY_DECLARATIONS_PROPERTY));
-		return true;
-	    }
-
-	    @Override
-	    public boolean visit(AnonymousClassDeclaration anonymousClassDeclaration) {
-		if (checkMalformedNodes(anonymousClassDeclaration)) {
-		    logger.warn("Malformed nodes. Aborting sorting of current element.");
-		    return true;
-		}
-
-		sortElements(anonymousClassDeclaration.bodyDeclarations(), rewriter.getListRewrite(
-			anonymousClassDeclaration, AnonymousClassDeclaration.BODY_DECLARATIONS_PROPERTY));
-		return true;
-	    }
-
-	    @Override
-	    public boolean visit(TypeDeclaration typeDeclaration) {
-		if (checkMalformedNodes(typeDeclaration)) {
-		    logger.warn("Malformed nodes. Aborting sorting of current element.");
-		    return true;
-		}
-
-		sortElements(typeDeclaration.bodyDeclarations(),
-			rewriter.getListRewrite(typeDeclaration, TypeDeclaration.BODY_DECLARATIONS_PROPERTY));
-		return true;
-	    }
-
-	    @Override
-	    public boolean visit(EnumDeclaration enumDeclaration) {
-		if (checkMalformedNodes(enumDeclaration)) {
-		    return true; // abort sorting of current element
-		}
-
-		sortElements(enumDeclaration.bodyDeclarations(),
-			rewriter.getListRewrite(enumDeclaration, EnumDeclaration.BODY_DECLARATIONS_PROPERTY));
-		sortElements(enumDeclaration.enumConstants(),
-			rewriter.getListRewrite(enumDeclaration, EnumDeclaration.ENUM_CONSTANTS_PROPERTY));
-		return true;
-	    }
-	});
-
-	if (!hasChanges[0])
-	    return null;
-
-	return rewriter;
-    }
-
     /**
      * Possible failures:
      * <ul>
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Finds the Java source files which are staged or modified relative to a ref,
+ * so only the files touched by a change have to be sorted, e.g. in a
+ * pre-commit hook.
+ * <p>
+ * The index and the tree of the ref are read from the local repository in
+ * process and the walk is restricted to the given directory and to
+ * <code>.java</code> files. No <code>git</code> process is started.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class ChangedFiles {
+
+    public static final String DEFAULT_REF = "HEAD";
+
+    private static final String JAVA_SUFFIX = ".java";
+
+    private ChangedFiles() {
+	// not meant to be instantiated
+    }
+
+    /**
+     * @param directory
+     *            a directory inside the work tree of a repository
+     * @param ref
+     *            the ref the changes are relative to, e.g. <code>HEAD</code>
+     *            or <code>origin/master</code>
+     * @return the existing Java source files below the directory which are
+     *         added or changed in the index or modified in the work tree,
+     *         compared to the tree of the ref
+     * @throws IOException
+     *             if the directory is not in a repository or the repository
+     *             cannot be read
+     * @throws IllegalArgumentException
+     *             if the ref cannot be resolved
+     */
+    public static List<File> find(File directory, String ref) throws IOException {
+	final FileRepositoryBuilder builder = new FileRepositoryBuilder().readEnvironment().findGitDir(
+		directory.getAbsoluteFile());
+	if (builder.getGitDir() == null)
+	    throw new IOException(directory + " is not in a Git repository");
+	final Repository repository = builder.build();
+	try {
+	    final ObjectId tree = repository.resolve(ref + "^{tree}");
+	    if (tree == null)
+		throw new IllegalArgumentException("Unknown ref " + ref);
+	    final File workTree = repository.getWorkTree().getCanonicalFile();
+	    final IndexDiff diff = new IndexDiff(repository, tree, new FileTreeIterator(repository));
+	    diff.setFilter(createFilter(workTree, directory.getCanonicalFile()));
+	    diff.diff();
+
+	    final Set<String> paths = new TreeSet<String>();
+	    paths.addAll(diff.getAdded());
+	    paths.addAll(diff.getChanged());
+	    paths.addAll(diff.getModified());
+	    final List<File> result = new ArrayList<File>();
+	    for (final String path : paths) {
+		final File file = new File(workTree, path);
+		if (file.isFile())
+		    result.add(file);
+	    }
+	    return result;
+	} finally {
+	    repository.close();
+	}
+    }
+
+    private static TreeFilter createFilter(File workTree, File directory) {
+	final TreeFilter javaFiles = PathSuffixFilter.create(JAVA_SUFFIX);
+	final String relative = getRelativePath(workTree, directory);
+	if (relative.length() == 0)
+	    return javaFiles;
+	return AndTreeFilter.create(PathFilter.create(relative), javaFiles);
+    }
+
+    /**
+     * @return the path of the directory relative to the work tree, separated
+     *         by slashes as in the index
+     */
+    private static String getRelativePath(File workTree, File directory) {
+	final StringBuilder sb = new StringBuilder();
+	for (File file = directory; file != null && !file.equals(workTree); file = file.getParentFile()) {
+	    if (sb.length() > 0)
+		sb.insert(0, '/');
+	    sb.insert(0, file.getName());
+	}
+	return sb.toString();
+    }
+
+}
@@ -9,181 +9,217 @@
 package com.github.parzonka.ccms.handler;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import org.eclipse.core.commands.AbstractHandler;
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaElement;
-import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.IPackageFragmentRoot;
-import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.internal.core.CompilationUnit;
-import org.eclipse.jdt.internal.core.JavaProject;
-import org.eclipse.jdt.internal.core.PackageFragment;
-import org.eclipse.jdt.internal.core.PackageFragmentRoot;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.handlers.HandlerUtil;
 
+import com.github.parzonka.ccms.Activator;
+import com.github.parzonka.ccms.batch.BatchCheckpoint;
+import com.github.parzonka.ccms.batch.BatchSortJob;
+import com.github.parzonka.ccms.batch.CompilationUnitEnumerator;
+import com.github.parzonka.ccms.batch.CompilationUnitFilter;
+import com.github.parzonka.ccms.batch.IMethodSorterFactory;
+import com.github.parzonka.ccms.batch.StageCounter;
+import com.github.parzonka.ccms.preferences.PreferenceManager;
 import com.github.parzonka.ccms.sorter.CleanCodeMethodSorter;
 import com.github.parzonka.ccms.sorter.IMethodSorter;
-import com.github.parzonka.ccms.sorter.callgraph.ASTUtils;
 
 /**
+ * Sorts the methods of all compilation units contained in the selection in a
+ * {@link BatchSortJob} and shows a summary when the job is done.
  *
  * @author Mateusz Parzonka
  *
  */
 public class BatchProcessingHandler extends AbstractHandler {
 
-    private IMethodSorter fMethodSorter;
     protected int sortedClassesCount;
-    private ExecutionEvent event;
-
-    public BatchProcessingHandler() {
-	super();
-	fMethodSorter = getMethodSorter();
-    }
+    protected int unchangedClassesCount;
+    protected int skippedClassesCount;
+    protected int failedClassesCount;
+    protected long estimatedPeakRetained;
+    protected long peakHeapUsed;
+    protected List<StageCounter> stageCounters = new ArrayList<StageCounter>();
 
+    /**
+     * Called once per compilation unit, as sorters are not thread-safe.
+     *
+     * @return a new sorter
+     */
     protected IMethodSorter getMethodSorter() {
-	return new CleanCodeMethodSorter();
+	return new CleanCodeMethodSorter(new PreferenceManager());
     }
 
     @Override
     public Object execute(ExecutionEvent event) throws ExecutionException {
 
-	sortedClassesCount = 0;
-	this.event = event;
-
-	ISelection currentSelection = HandlerUtil.getCurrentSelection(event);
-	if (currentSelection instanceof IStructuredSelection) {
-
-	    IStructuredSelection structuredSelection = (IStructuredSelection) HandlerUtil
-		    .getCurrentSelection(event);
-	    IJavaElement[] elements = getJavaElements(structuredSelection);
-	    sort(elements);
-	} else {
-	    IWorkbenchWindow window = HandlerUtil
-		    .getActiveWorkbenchWindowChecked(event);
-	    ICompilationUnit cu = ASTUtils.getCompilationUnit(window);
-	    sort(cu);
-	}
+	final PreferenceManager preferences = new PreferenceManager();
+	final IJavaElement[] elements = getSelectedElements(event);
+	final CompilationUnitEnumerator enumerator = getEnumerator(elements, preferences);
+	final Shell shell = HandlerUtil.getActiveWorkbenchWindowChecked(event).getShell();
 
-	MessageDialog.openInformation(
-		HandlerUtil.getActiveWorkbenchWindow(event).getShell(),
-		"Clean Code Method Sorter", getMessage());
+	final IMethodSorterFactory sorterFactory = new IMethodSorterFactory() {
+	    @Override
+	    public IMethodSorter create() {
+		return getMethodSorter();
+	    }
+	};
+	final BatchCheckpoint checkpoint = new BatchCheckpoint(BatchCheckpoint.getFile(Activator.getDefault()
+		.getStateLocation().toFile(), getJobIdentifier(elements)), getClass().getName() + " "
+		+ preferences.getFingerprint());
+	final BatchSortJob job = new BatchSortJob("Sorting methods", enumerator, sorterFactory,
+		preferences.getBatchGroupSize(), preferences.getBatchHeapBudget(), checkpoint);
+	job.setUser(true);
+	job.addJobChangeListener(new JobChangeAdapter() {
+	    @Override
+	    public void done(IJobChangeEvent jobEvent) {
+		if (jobEvent.getResult().getSeverity() == IStatus.CANCEL)
+		    return;
+		sortedClassesCount = job.getSortedCount();
+		unchangedClassesCount = job.getUnchangedCount();
+		skippedClassesCount = job.getSkippedCount();
+		failedClassesCount = job.getFailedCount();
+		estimatedPeakRetained = job.getEstimatedPeakRetained();
+		peakHeapUsed = job.getPeakHeapUsed();
+		stageCounters = job.getStageCounters();
+		showSummary(shell);
+	    }
+	});
+	job.schedule();
 
 	return null;
     }
 
     /**
-     * Converts the given structured selection into an array of Java elements.
-     * structured selection is not of type <code>IJavaElement</code> it is not
-     * included into the list.
-     *
-     * @param selection
-     *            the selection
-     * @return the Java element contained in the selection
+     * @param elements
+     * @return identifies the batch sorting the given elements with this
+     *         handler, so each selection is resumed from its own checkpoint
      */
-    private static IJavaElement[] getJavaElements(IStructuredSelection selection) {
-
-	List<IJavaElement> result = new ArrayList<IJavaElement>();
-	Iterator<?> iter = selection.iterator();
-	while (iter.hasNext()) {
-	    Object element = iter.next();
-	    if (element instanceof IJavaElement)
-		result.add((IJavaElement) element);
-	}
-	return result.toArray(new IJavaElement[result.size()]);
+    private String getJobIdentifier(IJavaElement[] elements) {
+	final List<String> identifiers = new ArrayList<String>();
+	for (final IJavaElement element : elements)
+	    identifiers.add(element.getHandleIdentifier());
+	Collections.sort(identifiers);
+	return getClass().getName() + " " + identifiers;
     }
 
     /**
+     * Creates the enumerator of the compilation units in the selection or, if
+     * there is no structured selection, of the cu in the active editor.
+     *
      * @param event
-     * @param store
-     * @param elements
+     * @param preferences
+     *            provides the include and exclude patterns
+     * @return the enumerator
      * @throws ExecutionException
      */
-    private void sort(IJavaElement[] elements) throws ExecutionException {
-
-	for (IJavaElement iJavaElement : elements) {
-
-	    if (iJavaElement instanceof CompilationUnit) {
-		sort((CompilationUnit) iJavaElement);
-
-	    } else if (iJavaElement instanceof PackageFragmentRoot) {
-		sort((PackageFragmentRoot) iJavaElement);
-
-	    } else if (iJavaElement instanceof PackageFragment) {
-		sort((PackageFragment) iJavaElement);
+    static CompilationUnitEnumerator createEnumerator(ExecutionEvent event, PreferenceManager preferences)
+	    throws ExecutionException {
+	return createEnumerator(getSelectedElements(event), preferences);
+    }
 
-	    } else if (iJavaElement instanceof JavaProject) {
-		sort((JavaProject) iJavaElement);
+    private static CompilationUnitEnumerator createEnumerator(IJavaElement[] elements,
+	    PreferenceManager preferences) {
+	return new CompilationUnitEnumerator(elements, createFilter(preferences));
+    }
 
-	    } else {
-		MessageDialog.openInformation(HandlerUtil
-			.getActiveWorkbenchWindow(event).getShell(),
-			"Clean Code Method Sorter",
-			iJavaElement.getClass().getCanonicalName() + "\n"
-				+ iJavaElement.getElementName());
-	    }
-	}
+    /**
+     * @param preferences
+     *            provides the include and exclude patterns
+     * @return the filter of the compilation units to be sorted
+     */
+    static CompilationUnitFilter createFilter(PreferenceManager preferences) {
+	return new CompilationUnitFilter(preferences.getBatchIncludes(), preferences.getBatchExcludes());
     }
 
-    private void sort(IPackageFragmentRoot packageFragmentRoot)
-	    throws ExecutionException {
-	try {
-	    sort(packageFragmentRoot.getChildren());
-	} catch (JavaModelException e) {
-	    throw new ExecutionException(e.getMessage());
-	}
+    /**
+     * Called in the UI thread, so it must not do expensive work. The
+     * enumerator runs in the job.
+     *
+     * @param elements
+     *            the selected elements
+     * @param preferences
+     * @return the enumerator of the compilation units to be sorted, by default
+     *         of all compilation units in the elements
+     */
+    protected CompilationUnitEnumerator getEnumerator(IJavaElement[] elements, PreferenceManager preferences) {
+	return createEnumerator(elements, preferences);
     }
 
-    private void sort(PackageFragment packageFragment) throws ExecutionException {
-	try {
-	    sort(packageFragment.getCompilationUnits());
-	} catch (JavaModelException e) {
-	    throw new ExecutionException(e.getMessage());
-	}
+    static IJavaElement[] getSelectedElements(ExecutionEvent event) throws ExecutionException {
+	ISelection currentSelection = HandlerUtil.getCurrentSelection(event);
+	if (currentSelection instanceof IStructuredSelection)
+	    return getJavaElements((IStructuredSelection) currentSelection);
+	IWorkbenchWindow window = HandlerUtil.getActiveWorkbenchWindowChecked(event);
+	ICompilationUnit cu = EditorUtils.getCompilationUnit(window);
+	if (cu == null)
+	    return new IJavaElement[0];
+	return new IJavaElement[] { cu };
     }
 
-    private void sort(IJavaProject iJavaElement) throws ExecutionException {
-	try {
-	    for (IPackageFragmentRoot root : iJavaElement
-		    .getAllPackageFragmentRoots()) {
-		if (root instanceof PackageFragmentRoot)
-		    sort(root);
+    private void showSummary(final Shell shell) {
+	if (shell.isDisposed())
+	    return;
+	shell.getDisplay().asyncExec(new Runnable() {
+	    @Override
+	    public void run() {
+		if (!shell.isDisposed())
+		    MessageDialog.openInformation(shell, "Clean Code Method Sorter", getMessage());
 	    }
-	} catch (JavaModelException e) {
-	    throw new ExecutionException(e.getMessage());
-	}
+	});
     }
 
     /**
-     * Sorts a single CompilationUnit.
+     * Converts the given structured selection into an array of Java elements.
+     * structured selection is not of type <code>IJavaElement</code> it is not
+     * included into the list.
      *
-     * @param cu
-     * @throws ExecutionException
+     * @param selection
+     *            the selection
+     * @return the Java element contained in the selection
      */
-    private void sort(ICompilationUnit cu) throws ExecutionException {
-	try {
-	    cu.becomeWorkingCopy(null);
-	    fMethodSorter.sort(cu);
-	    sortedClassesCount++;
-	    cu.commitWorkingCopy(true, null);
-	    cu.discardWorkingCopy();
-	} catch (JavaModelException e) {
-	    throw new ExecutionException(e.getMessage());
+    static IJavaElement[] getJavaElements(IStructuredSelection selection) {
+
+	List<IJavaElement> result = new ArrayList<IJavaElement>();
+	Iterator<?> iter = selection.iterator();
+	while (iter.hasNext()) {
+	    Object element = iter.next();
+	    if (element instanceof IJavaElement)
+		result.add((IJavaElement) element);
 	}
+	return result.toArray(new IJavaElement[result.size()]);
     }
 
     protected String getMessage() {
 	StringBuilder sb = new StringBuilder();
 	sb.append("Methods sorted in " + sortedClassesCount + " classes.");
+	if (unchangedClassesCount > 0)
+	    sb.append("\n" + unchangedClassesCount + " classes were sorted already.");
+	if (skippedClassesCount > 0)
+	    sb.append("\n" + skippedClassesCount + " classes were sorted by an interrupted run.");
+	if (failedClassesCount > 0)
+	    sb.append("\n" + failedClassesCount + " classes could not be sorted.");
+	if (estimatedPeakRetained > 0)
+	    sb.append("\nPeak AST memory (estimated): " + estimatedPeakRetained / (1024 * 1024) + " MB.");
+	if (peakHeapUsed > 0)
+	    sb.append("\nPeak heap used (sampled): " + peakHeapUsed / (1024 * 1024) + " MB.");
+	for (StageCounter stageCounter : stageCounters)
+	    sb.append("\n" + stageCounter);
 	return sb.toString();
     }
 
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import com.github.parzonka.ccms.Activator;
+import com.github.parzonka.ccms.batch.CompilationUnitEnumerator;
+import com.github.parzonka.ccms.batch.CompilationUnitFilter;
+import com.github.parzonka.ccms.git.ChangedFiles;
+import com.github.parzonka.ccms.preferences.PreferenceManager;
+
+/**
+ * Sorts only the compilation units in the selection which are staged or
+ * modified relative to the Git ref configured in the preferences, so the time
+ * taken depends on the size of the change instead of the size of the project.
+ * The compilation units are parsed with the classpath of their projects as in
+ * any batch.
+ * <p>
+ * The changed files are found in the job, not in the UI thread. JGit is an
+ * optional dependency, so the command is disabled if it is not installed.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class ChangedFilesHandler extends BatchProcessingHandler {
+
+    private static Boolean gitAvailable;
+
+    @Override
+    public boolean isEnabled() {
+	return isGitAvailable();
+    }
+
+    /**
+     * Loads a JGit class without initializing it, so a missing bundle is
+     * detected before {@link ChangedFiles} is linked.
+     *
+     * @return true if JGit can be loaded
+     */
+    private static synchronized boolean isGitAvailable() {
+	if (gitAvailable == null) {
+	    try {
+		Class.forName("org.eclipse.jgit.lib.Repository", false, ChangedFilesHandler.class.getClassLoader()); //$NON-NLS-1$
+		gitAvailable = Boolean.TRUE;
+	    } catch (final ClassNotFoundException e) {
+		gitAvailable = Boolean.FALSE;
+	    } catch (final LinkageError e) {
+		gitAvailable = Boolean.FALSE;
+	    }
+	}
+	return gitAvailable.booleanValue();
+    }
+
+    @Override
+    protected CompilationUnitEnumerator getEnumerator(IJavaElement[] elements, PreferenceManager preferences) {
+	return new ChangedFilesEnumerator(elements, preferences.getBatchChangedRef(), createFilter(preferences));
+    }
+
+    /**
+     * Finds the changed compilation units when the first one is requested,
+     * i.e. in the enumeration thread of the job, and then enumerates them.
+     */
+    private static class ChangedFilesEnumerator extends CompilationUnitEnumerator {
+
+	private final IJavaElement[] selected;
+	private final String ref;
+	private final CompilationUnitFilter filter;
+	private CompilationUnitEnumerator changed;
+
+	ChangedFilesEnumerator(IJavaElement[] selected, String ref, CompilationUnitFilter filter) {
+	    super(new IJavaElement[0], filter);
+	    this.selected = selected;
+	    this.ref = ref;
+	    this.filter = filter;
+	}
+
+	@Override
+	public ICompilationUnit next() throws JavaModelException {
+	    if (this.changed == null)
+		this.changed = new CompilationUnitEnumerator(findChanged(), this.filter);
+	    return this.changed.next();
+	}
+
+	private IJavaElement[] findChanged() throws JavaModelException {
+	    try {
+		return findChangedUnits(this.selected, this.ref);
+	    } catch (final IOException e) {
+		throw newException(e);
+	    } catch (final IllegalArgumentException e) {
+		throw newException(e);
+	    } catch (final LinkageError e) {
+		throw newException(e);
+	    }
+	}
+
+	private static JavaModelException newException(Throwable e) {
+	    return new JavaModelException(new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID,
+		    "Could not find the changed files: " + e.getMessage(), e)));
+	}
+
+    }
+
+    /**
+     * @param selected
+     * @param ref
+     *            the Git ref the files are compared to
+     * @return the changed compilation units in the selection
+     * @throws IOException
+     *             if a Git repository could not be read
+     */
+    private static IJavaElement[] findChangedUnits(IJavaElement[] selected, String ref) throws IOException {
+	final Set<IJavaProject> projects = new LinkedHashSet<IJavaProject>();
+	for (final IJavaElement element : selected) {
+	    if (element.getJavaProject() != null)
+		projects.add(element.getJavaProject());
+	}
+
+	final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+	final List<IJavaElement> result = new ArrayList<IJavaElement>();
+	for (final IJavaProject project : projects) {
+	    final IPath location = project.getProject().getLocation();
+	    if (location == null)
+		continue;
+	    for (final File file : ChangedFiles.find(location.toFile(), ref)) {
+		final ICompilationUnit cu = getCompilationUnit(root, project.getProject(), file);
+		if (cu != null && isSelected(cu, selected))
+		    result.add(cu);
+	    }
+	}
+	return result.toArray(new IJavaElement[result.size()]);
+    }
+
+    /**
+     * @return the compilation unit of the file if it is on the classpath of
+     *         the project, otherwise null
+     */
+    private static ICompilationUnit getCompilationUnit(IWorkspaceRoot root, IProject project, File file) {
+	for (final IFile resource : root.findFilesForLocationURI(file.toURI())) {
+	    if (!resource.getProject().equals(project))
+		continue;
+	    final IJavaElement element = JavaCore.create(resource);
+	    if (element instanceof ICompilationUnit && element.getJavaProject().isOnClasspath(element))
+		return (ICompilationUnit) element;
+	}
+	return null;
+    }
+
+    private static boolean isSelected(ICompilationUnit cu, IJavaElement[] selected) {
+	for (final IJavaElement element : selected) {
+	    for (IJavaElement ancestor = cu; ancestor != null; ancestor = ancestor.getParent()) {
+		if (ancestor.equals(element))
+		    return true;
+	    }
+	}
+	return false;
+    }
+
+}
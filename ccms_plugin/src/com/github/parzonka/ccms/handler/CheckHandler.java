@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.handler;
+
+import java.util.List;
+
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.handlers.HandlerUtil;
+
+import com.github.parzonka.ccms.batch.BatchSortJob;
+import com.github.parzonka.ccms.batch.IMethodSorterFactory;
+import com.github.parzonka.ccms.preferences.PreferenceManager;
+import com.github.parzonka.ccms.sorter.CleanCodeMethodSorter;
+import com.github.parzonka.ccms.sorter.IMethodSorter;
+import com.github.parzonka.ccms.sorter.UnsortedMember;
+
+/**
+ * Checks whether the methods of the selection are sorted, without calculating
+ * any edits, and lists the first unsorted member of each file.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class CheckHandler extends AbstractHandler {
+
+    private static final int MAX_LISTED = 20;
+
+    @Override
+    public Object execute(ExecutionEvent event) throws ExecutionException {
+	final PreferenceManager preferences = new PreferenceManager();
+	final Shell shell = HandlerUtil.getActiveShellChecked(event);
+
+	final BatchSortJob job = new BatchSortJob("Checking method order",
+		BatchProcessingHandler.createEnumerator(event, preferences), new IMethodSorterFactory() {
+		    @Override
+		    public IMethodSorter create() {
+			return new CleanCodeMethodSorter(new PreferenceManager());
+		    }
+		}, preferences.getBatchGroupSize(), preferences.getBatchHeapBudget(), null);
+	job.setCheckOnly(true);
+	job.setUser(true);
+	job.addJobChangeListener(new JobChangeAdapter() {
+	    @Override
+	    public void done(IJobChangeEvent jobEvent) {
+		if (jobEvent.getResult().getSeverity() != IStatus.CANCEL)
+		    showResult(shell, job.getUnsortedMembers(), job.getUnchangedCount(), job.getFailedCount());
+	    }
+	});
+	job.schedule();
+
+	return null;
+    }
+
+    private static void showResult(final Shell shell, final List<UnsortedMember> unsortedMembers,
+	    final int unchangedCount, final int failedCount) {
+	if (shell.isDisposed())
+	    return;
+	shell.getDisplay().asyncExec(new Runnable() {
+	    @Override
+	    public void run() {
+		if (!shell.isDisposed())
+		    MessageDialog.openInformation(shell, "Clean Code Method Sorter",
+			    getMessage(unsortedMembers, unchangedCount, failedCount));
+	    }
+	});
+    }
+
+    private static String getMessage(List<UnsortedMember> unsortedMembers, int unchangedCount, int failedCount) {
+	final StringBuilder sb = new StringBuilder();
+	if (unsortedMembers.isEmpty() && failedCount == 0) {
+	    sb.append("Methods are sorted in all " + unchangedCount + " classes.");
+	} else if (unsortedMembers.isEmpty()) {
+	    sb.append("Methods are sorted in " + unchangedCount + " classes.");
+	} else {
+	    sb.append("Methods are not sorted in " + unsortedMembers.size() + " classes:");
+	    for (final UnsortedMember unsorted : unsortedMembers.subList(0,
+		    Math.min(MAX_LISTED, unsortedMembers.size())))
+		sb.append("\n" + unsorted);
+	    if (unsortedMembers.size() > MAX_LISTED)
+		sb.append("\n...");
+	}
+	if (failedCount > 0)
+	    sb.append("\n" + failedCount + " classes could not be checked.");
+	return sb.toString();
+    }
+
+}
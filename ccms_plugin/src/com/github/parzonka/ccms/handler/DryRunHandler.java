@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.handler;
+
+import java.util.List;
+
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.PartInitException;
+import org.eclipse.ui.handlers.HandlerUtil;
+
+import com.github.parzonka.ccms.Activator;
+import com.github.parzonka.ccms.batch.BatchSortJob;
+import com.github.parzonka.ccms.batch.IMethodSorterFactory;
+import com.github.parzonka.ccms.batch.SortImpact;
+import com.github.parzonka.ccms.preferences.PreferenceManager;
+import com.github.parzonka.ccms.sorter.CleanCodeMethodSorter;
+import com.github.parzonka.ccms.sorter.IMethodSorter;
+import com.github.parzonka.ccms.view.SortImpactView;
+
+/**
+ * Calculates how sorting the selection would change its files, without
+ * changing them, in a low priority background job. Shows the result in the
+ * {@link SortImpactView}.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class DryRunHandler extends AbstractHandler {
+
+    @Override
+    public Object execute(ExecutionEvent event) throws ExecutionException {
+	final PreferenceManager preferences = new PreferenceManager();
+	final IWorkbenchPage page = HandlerUtil.getActiveWorkbenchWindowChecked(event).getActivePage();
+
+	final BatchSortJob job = new BatchSortJob("Calculating the impact of sorting methods",
+		BatchProcessingHandler.createEnumerator(event, preferences), new IMethodSorterFactory() {
+		    @Override
+		    public IMethodSorter create() {
+			return new CleanCodeMethodSorter(new PreferenceManager());
+		    }
+		}, preferences.getBatchGroupSize(), preferences.getBatchHeapBudget(), null);
+	job.setDryRun(true);
+	job.setPriority(Job.DECORATE);
+	job.addJobChangeListener(new JobChangeAdapter() {
+	    @Override
+	    public void done(IJobChangeEvent jobEvent) {
+		if (jobEvent.getResult().getSeverity() != IStatus.CANCEL)
+		    showImpacts(page, job.getImpacts());
+	    }
+	});
+	job.schedule();
+
+	return null;
+    }
+
+    private static void showImpacts(final IWorkbenchPage page, final List<SortImpact> impacts) {
+	page.getWorkbenchWindow().getShell().getDisplay().asyncExec(new Runnable() {
+	    @Override
+	    public void run() {
+		try {
+		    ((SortImpactView) page.showView(SortImpactView.ID)).setImpacts(impacts);
+		} catch (final PartInitException e) {
+		    Activator.getDefault().getLog().log(e.getStatus());
+		}
+	    }
+	});
+    }
+
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.handler;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.ui.SharedASTProvider;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.text.edits.TextEdit;
+
+import com.github.parzonka.ccms.Activator;
+import com.github.parzonka.ccms.preferences.PreferenceManager;
+import com.github.parzonka.ccms.sorter.CleanCodeMethodSorter;
+import com.github.parzonka.ccms.sorter.callgraph.ASTUtils;
+
+/**
+ * Calculates the ordering of a compilation unit on a snapshot of its contents
+ * in the background and hands the resulting edit back to the
+ * {@link EditorSortOperation} in the UI thread. The AST shared by the Java
+ * editor is reused when available.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class EditorSortJob extends Job {
+
+    private final EditorSortOperation operation;
+    private final ICompilationUnit cu;
+    private final String source;
+    private final long modificationStamp;
+    private final Display display;
+
+    /**
+     * Must be instantiated in the UI thread.
+     *
+     * @param operation
+     *            the operation applying the result
+     * @param cu
+     *            the compilation unit the snapshot was taken from
+     * @param source
+     *            the contents of the snapshot
+     * @param modificationStamp
+     *            the modification stamp of the document at the time of the
+     *            snapshot
+     */
+    public EditorSortJob(EditorSortOperation operation, ICompilationUnit cu, String source, long modificationStamp) {
+	super("Sorting methods in " + cu.getElementName());
+	this.operation = operation;
+	this.cu = cu;
+	this.source = source;
+	this.modificationStamp = modificationStamp;
+	this.display = Display.getCurrent();
+	setUser(true);
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+	monitor.beginTask(getName(), 3);
+	try {
+	    monitor.subTask("Parsing");
+	    final CompilationUnit ast = getAST(monitor);
+	    monitor.worked(1);
+	    if (monitor.isCanceled())
+		return Status.CANCEL_STATUS;
+
+	    monitor.subTask("Calculating method ordering");
+	    final TextEdit edit = new CleanCodeMethodSorter(new PreferenceManager()).calculateEdit(ast, this.source,
+		    this.cu.getJavaProject().getOptions(true));
+	    monitor.worked(2);
+	    if (monitor.isCanceled())
+		return Status.CANCEL_STATUS;
+
+	    applyAsync(edit);
+	    return Status.OK_STATUS;
+	} catch (final OperationCanceledException e) {
+	    return Status.CANCEL_STATUS;
+	} catch (final RuntimeException e) {
+	    return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Sorting methods failed", e);
+	} finally {
+	    monitor.done();
+	}
+    }
+
+    /**
+     * Reuses the AST shared by the Java editor, which the reconciler usually
+     * has built already, and falls back to parsing the snapshot when there is
+     * none or when it was not built from the contents of the snapshot. The
+     * shared AST is only read, sorting neither changes its structure nor sets
+     * node properties.
+     *
+     * @param monitor
+     * @return an AST with resolved bindings created from the snapshot
+     */
+    private CompilationUnit getAST(IProgressMonitor monitor) {
+	final CompilationUnit sharedAST = SharedASTProvider.getAST(this.cu, SharedASTProvider.WAIT_ACTIVE_ONLY,
+		monitor);
+	if (sharedAST != null && ASTUtils.isCreatedFrom(sharedAST, this.cu, this.source))
+	    return sharedAST;
+	return (CompilationUnit) ASTUtils.getAST(this.source.toCharArray(), this.cu, monitor);
+    }
+
+    private void applyAsync(final TextEdit edit) {
+	if (this.display == null || this.display.isDisposed())
+	    return;
+	this.display.asyncExec(new Runnable() {
+	    @Override
+	    public void run() {
+		EditorSortJob.this.operation.apply(edit, EditorSortJob.this.source,
+			EditorSortJob.this.modificationStamp);
+	    }
+	});
+    }
+
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.handler;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.internal.ui.javaeditor.CompilationUnitEditor;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentRewriteSession;
+import org.eclipse.jface.text.DocumentRewriteSessionType;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IRewriteTarget;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.ui.texteditor.IDocumentProvider;
+
+import com.github.parzonka.ccms.reconcile.PrecomputedOrderings;
+import com.github.parzonka.ccms.reconcile.PrecomputedOrderings.Entry;
+
+/**
+ * Sorts the compilation unit opened in a {@link CompilationUnitEditor}. The
+ * ordering is calculated by an {@link EditorSortJob} on a snapshot of the
+ * document, so the UI thread only takes the snapshot and applies the result.
+ * An ordering precomputed while reconciling is applied directly.
+ * The complete reordering is applied as one {@link MultiTextEdit} inside a
+ * document rewrite session, so document listeners see a single change and the
+ * user a single undo step.
+ * <p>
+ * All methods are to be called in the UI thread.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class EditorSortOperation {
+
+    private final CompilationUnitEditor editor;
+
+    public EditorSortOperation(CompilationUnitEditor editor) {
+	super();
+	this.editor = editor;
+    }
+
+    /**
+     * Applies the ordering precomputed for the current contents of the
+     * document, if any. Otherwise takes a snapshot of the document and
+     * schedules the calculation of the ordering.
+     */
+    public void run() {
+	final ICompilationUnit cu = EditorUtils.getCompilationUnit(this.editor);
+	final IDocument document = getDocument();
+	if (cu == null || document == null)
+	    return;
+	final String source = document.get();
+	final Entry precomputed = PrecomputedOrderings.getDefault().take(cu, source);
+	if (precomputed != null) {
+	    if (precomputed.getEdit() != null)
+		apply(precomputed.getEdit(), document);
+	    return;
+	}
+	new EditorSortJob(this, cu, source, getModificationStamp(document)).schedule();
+    }
+
+    /**
+     * Applies the given edit when the document has not been modified since
+     * the snapshot the edit was calculated on was taken. Otherwise the
+     * ordering is calculated again on the current contents.
+     *
+     * @param edit
+     *            the edit calculated on the snapshot, or null if no sorting is
+     *            required
+     * @param source
+     *            the contents of the snapshot
+     * @param modificationStamp
+     *            the modification stamp of the snapshot
+     */
+    void apply(TextEdit edit, String source, long modificationStamp) {
+	final IDocument document = getDocument();
+	if (document == null)
+	    return;
+	if (!isUnchanged(document, source, modificationStamp)) {
+	    run();
+	    return;
+	}
+	if (edit != null)
+	    apply(edit, document);
+    }
+
+    private void apply(TextEdit edit, IDocument document) {
+	final MultiTextEdit multiEdit = toMultiTextEdit(edit);
+	final IRewriteTarget target = (IRewriteTarget) this.editor.getAdapter(IRewriteTarget.class);
+	if (target != null) {
+	    target.beginCompoundChange();
+	    target.setRedraw(false);
+	}
+	DocumentRewriteSession session = null;
+	if (document instanceof IDocumentExtension4)
+	    session = ((IDocumentExtension4) document).startRewriteSession(DocumentRewriteSessionType.UNRESTRICTED);
+	try {
+	    multiEdit.apply(document, TextEdit.NONE);
+	} catch (final MalformedTreeException e) {
+	    throw new RuntimeException(e);
+	} catch (final BadLocationException e) {
+	    throw new RuntimeException(e);
+	} finally {
+	    if (session != null)
+		((IDocumentExtension4) document).stopRewriteSession(session);
+	    if (target != null) {
+		target.setRedraw(true);
+		target.endCompoundChange();
+	    }
+	}
+    }
+
+    /**
+     * @return the document of the editor or null, when the editor has been
+     *         closed in the meantime.
+     */
+    private IDocument getDocument() {
+	final IDocumentProvider provider = this.editor.getDocumentProvider();
+	if (provider == null)
+	    return null;
+	return provider.getDocument(this.editor.getEditorInput());
+    }
+
+    private static long getModificationStamp(IDocument document) {
+	if (document instanceof IDocumentExtension4)
+	    return ((IDocumentExtension4) document).getModificationStamp();
+	return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    }
+
+    private static boolean isUnchanged(IDocument document, String source, long modificationStamp) {
+	if (modificationStamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP)
+	    return modificationStamp == getModificationStamp(document);
+	return source.equals(document.get());
+    }
+
+    private static MultiTextEdit toMultiTextEdit(TextEdit edit) {
+	if (edit instanceof MultiTextEdit)
+	    return (MultiTextEdit) edit;
+	final MultiTextEdit multiEdit = new MultiTextEdit();
+	multiEdit.addChild(edit);
+	return multiEdit;
+    }
+
+}
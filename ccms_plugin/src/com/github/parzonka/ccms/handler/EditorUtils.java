@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.handler;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.internal.ui.actions.SelectionConverter;
+import org.eclipse.jdt.internal.ui.javaeditor.CompilationUnitEditor;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchWindow;
+
+/**
+ * Some utilities for accessing the compilation unit in the active editor.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class EditorUtils {
+
+    private EditorUtils() {
+	// not meant to be instantiated
+    }
+
+    /**
+     * Returns a ICompilationUnit when the active editor in the workbench is an
+     * instance of CompilationUnitEditor. Returns null otherwise.
+     *
+     * @param workbenchWindow
+     * @return the cu in the editor
+     */
+    public static ICompilationUnit getCompilationUnit(IWorkbenchWindow workbenchWindow) {
+	final CompilationUnitEditor cuEditor = getCompilationUnitEditor(workbenchWindow);
+	if (cuEditor == null)
+	    return null;
+	return getCompilationUnit(cuEditor);
+    }
+
+    /**
+     * Returns the active editor in the workbench when it is an instance of
+     * CompilationUnitEditor. Returns null otherwise.
+     *
+     * @param workbenchWindow
+     * @return the active cu editor
+     */
+    public static CompilationUnitEditor getCompilationUnitEditor(IWorkbenchWindow workbenchWindow) {
+	final IWorkbench workbench = workbenchWindow.getWorkbench();
+	final IWorkbenchWindow activeWorkbenchWindow = workbench.getActiveWorkbenchWindow();
+	final IWorkbenchPage activePage = activeWorkbenchWindow.getActivePage();
+	final IEditorPart activeEditor = activePage.getActiveEditor();
+	if (activeEditor instanceof CompilationUnitEditor)
+	    return (CompilationUnitEditor) activeEditor;
+	else
+	    return null;
+    }
+
+    /**
+     * Returns the ICompilationUnit edited in the given editor or null, when the
+     * input of the editor is no compilation unit.
+     *
+     * @param cuEditor
+     * @return the cu in the editor
+     */
+    public static ICompilationUnit getCompilationUnit(CompilationUnitEditor cuEditor) {
+	final IJavaElement input = SelectionConverter.getInput(cuEditor);
+	if (input instanceof ICompilationUnit) {
+	    return (ICompilationUnit) input;
+	} else
+	    return null;
+    }
+
+}
@@ -11,12 +11,10 @@ package com.github.parzonka.ccms.handler;
 import org.eclipse.core.commands.AbstractHandler;
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
-import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.internal.ui.javaeditor.CompilationUnitEditor;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.handlers.HandlerUtil;
 
-import com.github.parzonka.ccms.sorter.CleanCodeMethodSorter;
-import com.github.parzonka.ccms.sorter.callgraph.ASTUtils;
 
 /**
  * Handles an event from the active workbench window.
@@ -26,18 +24,13 @@ import com.github.parzonka.ccms.sorter.callgraph.ASTUtils;
  */
 public class SingleUnitHandler extends AbstractHandler {
 
-    private final CleanCodeMethodSorter sorter;
-
-    public SingleUnitHandler() {
-	sorter = new CleanCodeMethodSorter();
-    }
-
     @Override
     public Object execute(ExecutionEvent event) throws ExecutionException {
 	IWorkbenchWindow window = HandlerUtil
 		.getActiveWorkbenchWindowChecked(event);
-	ICompilationUnit cu = ASTUtils.getCompilationUnit(window);
-	sorter.sort(cu);
+	CompilationUnitEditor editor = EditorUtils.getCompilationUnitEditor(window);
+	if (editor != null)
+	    new EditorSortOperation(editor).run();
 	return null;
     }
 }
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.handler;
+
+import java.util.List;
+
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.ltk.ui.refactoring.RefactoringWizardOpenOperation;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.handlers.HandlerUtil;
+
+import com.github.parzonka.ccms.batch.CompilationUnitCollector;
+import com.github.parzonka.ccms.refactoring.SortMethodsRefactoring;
+import com.github.parzonka.ccms.refactoring.SortMethodsWizard;
+
+/**
+ * Sorts the methods of the selected Java elements as a refactoring, showing a
+ * preview of the changes before applying them.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class SortMethodsRefactoringHandler extends AbstractHandler {
+
+    @Override
+    public Object execute(ExecutionEvent event) throws ExecutionException {
+	final ISelection selection = HandlerUtil.getCurrentSelection(event);
+	if (!(selection instanceof IStructuredSelection))
+	    return null;
+
+	final List<ICompilationUnit> compilationUnits;
+	try {
+	    compilationUnits = CompilationUnitCollector.collect(BatchProcessingHandler
+		    .getJavaElements((IStructuredSelection) selection));
+	} catch (final JavaModelException e) {
+	    throw new ExecutionException(e.getMessage());
+	}
+
+	final SortMethodsRefactoring refactoring = new SortMethodsRefactoring(compilationUnits);
+	final Shell shell = HandlerUtil.getActiveShellChecked(event);
+	try {
+	    new RefactoringWizardOpenOperation(new SortMethodsWizard(refactoring)).run(shell, refactoring.getName());
+	} catch (final InterruptedException e) {
+	    // canceled by the user
+	}
+	return null;
+    }
+
+}
@@ -8,14 +8,12 @@
  */
 package com.github.parzonka.ccms.handler;
 
-import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.internal.ui.javaeditor.CompilationUnitEditor;
 import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.IWorkbenchWindowActionDelegate;
 
-import com.github.parzonka.ccms.sorter.CleanCodeMethodSorter;
-import com.github.parzonka.ccms.sorter.callgraph.ASTUtils;
 
 /**
  *
@@ -25,11 +23,6 @@ import com.github.parzonka.ccms.sorter.callgraph.ASTUtils;
 public class SorterAction implements IWorkbenchWindowActionDelegate {
 
     private IWorkbenchWindow window;
-    private final CleanCodeMethodSorter sorter;
-
-    public SorterAction() {
-	sorter = new CleanCodeMethodSorter();
-    }
 
     /**
      * We will cache window object in order to be able to provide parent shell
@@ -60,8 +53,9 @@ public class SorterAction implements IWorkbenchWindowActionDelegate {
      */
     @Override
     public void run(IAction action) {
-	ICompilationUnit cu = ASTUtils.getCompilationUnit(window);
-	sorter.sort(cu);
+	CompilationUnitEditor editor = EditorUtils.getCompilationUnitEditor(window);
+	if (editor != null)
+	    new EditorSortOperation(editor).run();
     }
 
     /**
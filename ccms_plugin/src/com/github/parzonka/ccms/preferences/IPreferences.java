@@ -37,4 +37,11 @@ public interface IPreferences {
 
     public boolean isBeforeAfterRelation();
 
+    /**
+     * @return the order of the member categories in the format of the JDT
+     *         preference "Members Sort Order", e.g.
+     *         <code>T,SF,SI,SM,F,I,C,M</code>
+     */
+    public String getMemberSortOrder();
+
 }
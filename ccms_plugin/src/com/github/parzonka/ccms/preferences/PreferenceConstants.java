@@ -24,6 +24,14 @@ public class PreferenceConstants {
     public static final String CLUSTER_OVERLOADED_METHODS = "Cluster overloaded methods";
     public static final String CLUSTER_GETTER_SETTER = "Cluster getter and setter";
 
+    public static final String PRECOMPUTE_ON_RECONCILE = "Precompute ordering while editing";
+
+    public static final String BATCH_GROUP_SIZE = "Compilation units parsed together when sorting in batch";
+    public static final String BATCH_INCLUDES = "Include when sorting in batch (comma-separated globs)";
+    public static final String BATCH_EXCLUDES = "Exclude when sorting in batch (comma-separated globs)";
+    public static final String BATCH_HEAP_BUDGET = "Heap budget for ASTs when sorting in batch (MB)";
+    public static final String BATCH_CHANGED_REF = "Git ref the changed files are compared with";
+
     public static final String METHOD_ORDERING_PRIORITIES = "Ordering priorities";
     public static final String PRIORITY_INVOCATION_ORDER = "Apply INVOCATION ordering";
     public static final String PRIORITY_INITIALIZER_INVOCATION = "Invoked by initializer";
@@ -38,4 +46,16 @@ public class PreferenceConstants {
 
     public static final String DELIMITER = "#";
 
+    public static final int DEFAULT_BATCH_GROUP_SIZE = 100;
+
+    public static final String DEFAULT_METHOD_ORDERING_PRIORITIES = PRIORITY_INVOCATION_ORDER + DELIMITER
+	    + PRIORITY_ACCESS_LEVEL + DELIMITER + PRIORITY_SOURCE_POSITION + DELIMITER + PRIORITY_LEXICALITY;
+
+    /**
+     * @return a quarter of the maximum heap in MB
+     */
+    public static int getDefaultBatchHeapBudget() {
+	return (int) Math.max(64, Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024));
+    }
+
 }
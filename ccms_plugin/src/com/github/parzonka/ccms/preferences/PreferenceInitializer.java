@@ -18,6 +18,7 @@ import org.eclipse.core.runtime.preferences.AbstractPreferenceInitializer;
 import org.eclipse.jface.preference.IPreferenceStore;
 
 import com.github.parzonka.ccms.Activator;
+import com.github.parzonka.ccms.git.ChangedFiles;
 
 /**
  * Class used to initialize default preference values.
@@ -40,16 +41,19 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 	store.setDefault(CLUSTER_GETTER_SETTER, false);
 	store.setDefault(RESPECT_BEFORE_AFTER, true);
 	store.setDefault(CLUSTER_OVERLOADED_METHODS, false);
+	store.setDefault(PRECOMPUTE_ON_RECONCILE, false);
+	store.setDefault(BATCH_GROUP_SIZE, DEFAULT_BATCH_GROUP_SIZE);
+	store.setDefault(BATCH_INCLUDES, "");
+	store.setDefault(BATCH_EXCLUDES, "");
+	store.setDefault(BATCH_HEAP_BUDGET, getDefaultBatchHeapBudget());
+	store.setDefault(BATCH_CHANGED_REF, ChangedFiles.DEFAULT_REF);
 	store.setDefault(
 		METHOD_ORDERING_PRIORITIES,
 		join(getDefaultMethodOrderingPriorities(), "#"));
     }
 
     public static Collection<String> getDefaultMethodOrderingPriorities() {
-	return list(
-		PRIORITY_INVOCATION_ORDER, PRIORITY_ACCESS_LEVEL,
-		PRIORITY_SOURCE_POSITION,
-		PRIORITY_LEXICALITY);
+	return list(DEFAULT_METHOD_ORDERING_PRIORITIES.split(DELIMITER));
     }
 
 }
@@ -9,6 +9,7 @@
 package com.github.parzonka.ccms.preferences;
 
 import static com.github.parzonka.ccms.Utils.list;
+import static com.github.parzonka.ccms.Utils.split;
 import static com.github.parzonka.ccms.preferences.PreferenceConstants.*;
 
 import java.util.List;
@@ -51,6 +52,17 @@ public class PreferenceManager implements IPreferences {
 		+ getMethodOrderingPreferences() + "]";
     }
 
+    /**
+     * @return every preference the order of the members depends on, including
+     *         the member sort order of the JDT UI. Changes whenever a sorter
+     *         created with these preferences would sort differently.
+     */
+    public String getFingerprint() {
+	return applyWorkingListHeuristics() + "," + isBeforeAfterRelation() + "," + isGetterSetterClustering()
+		+ "," + isInvocationStrategyDepthFirst() + "," + isOverloadedMethodClustering() + ","
+		+ getMethodOrderingPreferences() + "," + getMemberSortOrder();
+    }
+
     @Override
     public boolean applyWorkingListHeuristics() {
 	return this.store.getString(INVOCATION_STARTPOINT_STRATEGY).equals(
@@ -78,9 +90,68 @@ public class PreferenceManager implements IPreferences {
 	return this.store.getBoolean(CLUSTER_OVERLOADED_METHODS);
     }
 
+    /**
+     * Reads the order of the member categories from the JDT UI, so sorting
+     * methods keeps the order configured in the "Members Sort Order"
+     * preference page.
+     */
+    @Override
+    public String getMemberSortOrder() {
+	return org.eclipse.jdt.ui.PreferenceConstants.getPreferenceStore().getString(
+		org.eclipse.jdt.ui.PreferenceConstants.APPEARANCE_MEMBER_SORT_ORDER);
+    }
+
     @Override
     public List<String> getMethodOrderingPreferences() {
 	return list(this.store.getString(METHOD_ORDERING_PRIORITIES).split(DELIMITER));
     }
 
+    /**
+     * @return true, when the ordering of the active editor is to be calculated
+     *         in the background after each reconcile.
+     */
+    public boolean isPrecomputeOnReconcile() {
+	return this.store.getBoolean(PRECOMPUTE_ON_RECONCILE);
+    }
+
+    /**
+     * @return the maximum number of compilation units sharing one binding
+     *         environment when sorting in batch. Bounds the memory used.
+     */
+    public int getBatchGroupSize() {
+	return Math.max(1, this.store.getInt(BATCH_GROUP_SIZE));
+    }
+
+    /**
+     * @return the heap in bytes the ASTs parsed at once when sorting in batch
+     *         may retain.
+     */
+    public long getBatchHeapBudget() {
+	return Math.max(1, this.store.getInt(BATCH_HEAP_BUDGET)) * 1024L * 1024L;
+    }
+
+    /**
+     * @return the glob patterns of the compilation units to be sorted in batch.
+     *         Empty when all compilation units are to be sorted.
+     */
+    public List<String> getBatchIncludes() {
+	return split(this.store.getString(BATCH_INCLUDES), ",");
+    }
+
+    /**
+     * @return the glob patterns of the compilation units to be skipped when
+     *         sorting in batch, e.g. generated sources or tests.
+     */
+    public List<String> getBatchExcludes() {
+	return split(this.store.getString(BATCH_EXCLUDES), ",");
+    }
+
+    /**
+     * @return the Git ref the files sorted by "Sort Changed Methods" are
+     *         changed relative to
+     */
+    public String getBatchChangedRef() {
+	return this.store.getString(BATCH_CHANGED_REF);
+    }
+
 }
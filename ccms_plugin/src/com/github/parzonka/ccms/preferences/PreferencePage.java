@@ -14,8 +14,10 @@ import static com.github.parzonka.ccms.preferences.PreferenceConstants.*;
 
 import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.preference.ListEditor;
 import org.eclipse.jface.preference.RadioGroupFieldEditor;
+import org.eclipse.jface.preference.StringFieldEditor;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
@@ -66,6 +68,18 @@ public class PreferencePage extends FieldEditorPreferencePage implements
 
 	addBooleanField(RESPECT_BEFORE_AFTER);
 
+	addBooleanField(PRECOMPUTE_ON_RECONCILE);
+
+	addIntegerField(BATCH_GROUP_SIZE, 1, 10000);
+
+	addIntegerField(BATCH_HEAP_BUDGET, 16, 1024 * 1024);
+
+	addStringField(BATCH_INCLUDES);
+
+	addStringField(BATCH_EXCLUDES);
+
+	addStringField(BATCH_CHANGED_REF);
+
     }
 
     private void addRadioGroupField(String fieldName, String option1,
@@ -79,6 +93,16 @@ public class PreferencePage extends FieldEditorPreferencePage implements
 	addField(new BooleanFieldEditor(field, field, getFieldEditorParent()));
     }
 
+    private void addStringField(String field) {
+	addField(new StringFieldEditor(field, field, getFieldEditorParent()));
+    }
+
+    private void addIntegerField(String field, int min, int max) {
+	final IntegerFieldEditor editor = new IntegerFieldEditor(field, field, getFieldEditorParent());
+	editor.setValidRange(min, max);
+	addField(editor);
+    }
+
     @Override
     public void init(IWorkbench workbench) {
     }
@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.preferences;
+
+import static com.github.parzonka.ccms.Utils.list;
+import static com.github.parzonka.ccms.Utils.split;
+import static com.github.parzonka.ccms.preferences.PreferenceConstants.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+
+import com.github.parzonka.ccms.sorter.comparator.MemberCategoryOrder;
+
+/**
+ * Makes preferences stored in {@link Properties} accessible via the plugins
+ * {@link IPreferences}-interface, so the sorter can be configured without the
+ * workbench. The keys are the keys of the preference store, so the preferences
+ * exported from a workspace can be used as they are. Missing keys have the
+ * defaults of the {@link PreferenceInitializer}.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class PropertiesPreferences implements IPreferences {
+
+    /**
+     * Not stored by this plugin, but by the JDT UI.
+     */
+    public static final String MEMBER_SORT_ORDER = "outlinesortoption";
+
+    private final Properties properties;
+
+    /**
+     * Uses the defaults only.
+     */
+    public PropertiesPreferences() {
+	this(new Properties());
+    }
+
+    public PropertiesPreferences(Properties properties) {
+	super();
+	this.properties = properties;
+    }
+
+    /**
+     * @param file
+     *            a properties file, e.g. the <code>ccms_plugin.prefs</code>
+     *            of a workspace
+     * @return the preferences
+     * @throws IOException
+     */
+    public static PropertiesPreferences load(File file) throws IOException {
+	final Properties properties = new Properties();
+	final InputStream in = new FileInputStream(file);
+	try {
+	    properties.load(in);
+	} finally {
+	    in.close();
+	}
+	return new PropertiesPreferences(properties);
+    }
+
+    @Override
+    public String toString() {
+	return "PropertiesPreferences [applyWorkingListHeuristics()=" + applyWorkingListHeuristics()
+		+ ", isGetterSetterClustering()=" + isGetterSetterClustering()
+		+ ", isInvocationStrategyDepthFirst()=" + isInvocationStrategyDepthFirst()
+		+ ", isOverloadedMethodClustering()=" + isOverloadedMethodClustering()
+		+ ", getMethodOrderingPreferences()=" + getMethodOrderingPreferences() + "]";
+    }
+
+    @Override
+    public boolean applyWorkingListHeuristics() {
+	return getString(INVOCATION_STARTPOINT_STRATEGY, INVOCATION_STARTPOINT_STRATEGY_HEURISTIC).equals(
+		INVOCATION_STARTPOINT_STRATEGY_HEURISTIC);
+    }
+
+    @Override
+    public boolean isBeforeAfterRelation() {
+	return getBoolean(RESPECT_BEFORE_AFTER, true);
+    }
+
+    @Override
+    public boolean isGetterSetterClustering() {
+	return getBoolean(CLUSTER_GETTER_SETTER, false);
+    }
+
+    @Override
+    public boolean isInvocationStrategyDepthFirst() {
+	return getString(INVOCATION_ORDERING_STRATEGY, INVOCATION_ORDERING_STRATEGY_DEPTH_FIRST).equals(
+		INVOCATION_ORDERING_STRATEGY_DEPTH_FIRST);
+    }
+
+    @Override
+    public boolean isOverloadedMethodClustering() {
+	return getBoolean(CLUSTER_OVERLOADED_METHODS, false);
+    }
+
+    @Override
+    public String getMemberSortOrder() {
+	return getString(MEMBER_SORT_ORDER, MemberCategoryOrder.DEFAULT_ORDER);
+    }
+
+    @Override
+    public List<String> getMethodOrderingPreferences() {
+	return list(getString(METHOD_ORDERING_PRIORITIES, DEFAULT_METHOD_ORDERING_PRIORITIES).split(DELIMITER));
+    }
+
+    /**
+     * @return the maximum number of compilation units sharing one binding
+     *         environment
+     */
+    public int getBatchGroupSize() {
+	return Math.max(1, getInt(BATCH_GROUP_SIZE, DEFAULT_BATCH_GROUP_SIZE));
+    }
+
+    /**
+     * @return the heap in bytes the ASTs parsed at once may retain
+     */
+    public long getBatchHeapBudget() {
+	return Math.max(1, getInt(BATCH_HEAP_BUDGET, getDefaultBatchHeapBudget())) * 1024L * 1024L;
+    }
+
+    /**
+     * @return the glob patterns of the files to be sorted. Empty when all files
+     *         are to be sorted.
+     */
+    public List<String> getBatchIncludes() {
+	return split(getString(BATCH_INCLUDES, ""), ",");
+    }
+
+    /**
+     * @return the glob patterns of the files to be skipped
+     */
+    public List<String> getBatchExcludes() {
+	return split(getString(BATCH_EXCLUDES, ""), ",");
+    }
+
+    private String getString(String key, String defaultValue) {
+	return this.properties.getProperty(key, defaultValue);
+    }
+
+    private int getInt(String key, int defaultValue) {
+	final String value = this.properties.getProperty(key);
+	if (value == null)
+	    return defaultValue;
+	try {
+	    return Integer.parseInt(value.trim());
+	} catch (final NumberFormatException e) {
+	    return defaultValue;
+	}
+    }
+
+    private boolean getBoolean(String key, boolean defaultValue) {
+	final String value = this.properties.getProperty(key);
+	if (value == null)
+	    return defaultValue;
+	return Boolean.valueOf(value.trim()).booleanValue();
+    }
+
+}
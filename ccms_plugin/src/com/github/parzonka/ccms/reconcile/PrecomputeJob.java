@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.reconcile;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.ui.SharedASTProvider;
+import org.eclipse.text.edits.TextEdit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.parzonka.ccms.preferences.PreferenceManager;
+import com.github.parzonka.ccms.sorter.CleanCodeMethodSorter;
+import com.github.parzonka.ccms.sorter.callgraph.ASTUtils;
+
+/**
+ * Calculates the ordering of a working copy on the AST shared by the Java
+ * editor after it has been reconciled. The AST is only used if it was built
+ * from the current source of the working copy, as the edit is cached for that
+ * source and applied to it directly.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class PrecomputeJob extends Job {
+
+    final private static Logger logger = LoggerFactory.getLogger(PrecomputeJob.class);
+
+    private final ICompilationUnit workingCopy;
+
+    public PrecomputeJob(ICompilationUnit workingCopy) {
+	super("Precomputing method ordering of " + workingCopy.getElementName());
+	this.workingCopy = workingCopy;
+	setSystem(true);
+	setPriority(DECORATE);
+    }
+
+    public ICompilationUnit getWorkingCopy() {
+	return this.workingCopy;
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+	try {
+	    final String source = this.workingCopy.getSource();
+	    final CompilationUnit ast = SharedASTProvider.getAST(this.workingCopy, SharedASTProvider.WAIT_ACTIVE_ONLY,
+		    monitor);
+	    if (ast == null || monitor.isCanceled() || !ASTUtils.isCreatedFrom(ast, this.workingCopy, source))
+		return Status.CANCEL_STATUS;
+	    final TextEdit edit = new CleanCodeMethodSorter(new PreferenceManager()).calculateEdit(ast, source,
+		    this.workingCopy.getJavaProject().getOptions(true));
+	    if (monitor.isCanceled())
+		return Status.CANCEL_STATUS;
+	    PrecomputedOrderings.getDefault().put(this, source, edit);
+	    return Status.OK_STATUS;
+	} catch (final OperationCanceledException e) {
+	    return Status.CANCEL_STATUS;
+	} catch (final JavaModelException e) {
+	    logger.debug("Precomputing the ordering failed", e);
+	    return Status.CANCEL_STATUS;
+	} catch (final RuntimeException e) {
+	    logger.debug("Precomputing the ordering failed", e);
+	    return Status.CANCEL_STATUS;
+	} finally {
+	    PrecomputedOrderings.getDefault().done(this);
+	}
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.reconcile;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.text.edits.TextEdit;
+
+/**
+ * Holds the sorting edits precomputed after reconciling, one per working copy.
+ * An edit is only handed out for exactly the source it was calculated on and
+ * only once, since applying a {@link TextEdit} modifies it.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class PrecomputedOrderings {
+
+    private static final int MAX_ENTRIES = 8;
+
+    private static final PrecomputedOrderings instance = new PrecomputedOrderings();
+
+    private final Map<ICompilationUnit, Entry> entries;
+    private final Map<ICompilationUnit, PrecomputeJob> jobs;
+
+    private PrecomputedOrderings() {
+	this.entries = new LinkedHashMap<ICompilationUnit, Entry>(MAX_ENTRIES, 0.75f, true) {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<ICompilationUnit, Entry> eldest) {
+		return size() > MAX_ENTRIES;
+	    }
+	};
+	this.jobs = new HashMap<ICompilationUnit, PrecomputeJob>();
+    }
+
+    public static PrecomputedOrderings getDefault() {
+	return instance;
+    }
+
+    /**
+     * Discards the ordering of the given working copy and schedules its
+     * recalculation, canceling a calculation still running for it.
+     *
+     * @param workingCopy
+     */
+    public synchronized void schedule(ICompilationUnit workingCopy) {
+	this.entries.remove(workingCopy);
+	final PrecomputeJob running = this.jobs.get(workingCopy);
+	if (running != null)
+	    running.cancel();
+	final PrecomputeJob job = new PrecomputeJob(workingCopy);
+	this.jobs.put(workingCopy, job);
+	job.schedule();
+    }
+
+    synchronized void put(PrecomputeJob job, String source, TextEdit edit) {
+	final ICompilationUnit workingCopy = job.getWorkingCopy();
+	if (this.jobs.get(workingCopy) != job)
+	    return;
+	this.jobs.remove(workingCopy);
+	this.entries.put(workingCopy, new Entry(source, edit));
+    }
+
+    synchronized void done(PrecomputeJob job) {
+	if (this.jobs.get(job.getWorkingCopy()) == job)
+	    this.jobs.remove(job.getWorkingCopy());
+    }
+
+    /**
+     * Removes and returns the ordering precomputed for the given source.
+     *
+     * @param cu
+     * @param source
+     *            the current contents of the cu
+     * @return the entry or null, when no ordering has been precomputed for
+     *         this source
+     */
+    public synchronized Entry take(ICompilationUnit cu, String source) {
+	final Entry entry = this.entries.get(cu);
+	if (entry == null || !entry.source.equals(source))
+	    return null;
+	this.entries.remove(cu);
+	return entry;
+    }
+
+    /**
+     * Returns the ordering precomputed for the given source without removing
+     * it. The edit of the entry must not be applied.
+     *
+     * @param cu
+     * @param source
+     *            the current contents of the cu
+     * @return the entry or null, when no ordering has been precomputed for
+     *         this source
+     */
+    public synchronized Entry peek(ICompilationUnit cu, String source) {
+	final Entry entry = this.entries.get(cu);
+	if (entry == null || !entry.source.equals(source))
+	    return null;
+	return entry;
+    }
+
+    public static class Entry {
+
+	private final String source;
+	private final TextEdit edit;
+
+	Entry(String source, TextEdit edit) {
+	    this.source = source;
+	    this.edit = edit;
+	}
+
+	/**
+	 * @return the edit sorting the source or null, when the source is
+	 *         already sorted
+	 */
+	public TextEdit getEdit() {
+	    return this.edit;
+	}
+
+    }
+
+}
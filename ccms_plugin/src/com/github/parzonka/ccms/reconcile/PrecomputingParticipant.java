@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.reconcile;
+
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.compiler.CompilationParticipant;
+import org.eclipse.jdt.core.compiler.ReconcileContext;
+
+import com.github.parzonka.ccms.preferences.PreferenceManager;
+
+/**
+ * Schedules the calculation of the ordering of a working copy whenever it is
+ * reconciled, so sorting the active editor only has to apply the edit. Active
+ * only when enabled in the preferences.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class PrecomputingParticipant extends CompilationParticipant {
+
+    @Override
+    public boolean isActive(IJavaProject project) {
+	return new PreferenceManager().isPrecomputeOnReconcile();
+    }
+
+    @Override
+    public void reconcile(ReconcileContext context) {
+	PrecomputedOrderings.getDefault().schedule(context.getWorkingCopy());
+    }
+
+}
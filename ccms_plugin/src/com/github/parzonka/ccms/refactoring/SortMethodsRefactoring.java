@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.refactoring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.CompositeChange;
+import org.eclipse.ltk.core.refactoring.Refactoring;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.core.refactoring.TextFileChange;
+import org.eclipse.text.edits.TextEdit;
+
+import com.github.parzonka.ccms.Activator;
+import com.github.parzonka.ccms.preferences.PreferenceManager;
+import com.github.parzonka.ccms.sorter.CleanCodeMethodSorter;
+
+/**
+ * Sorts the methods of a set of compilation units as a refactoring, so the
+ * changes can be previewed and undone. The edits of the compilation units are
+ * calculated concurrently.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class SortMethodsRefactoring extends Refactoring {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final List<ICompilationUnit> compilationUnits;
+
+    public SortMethodsRefactoring(List<ICompilationUnit> compilationUnits) {
+	super();
+	this.compilationUnits = compilationUnits;
+    }
+
+    @Override
+    public String getName() {
+	return "Sort Methods";
+    }
+
+    @Override
+    public RefactoringStatus checkInitialConditions(IProgressMonitor pm) {
+	if (this.compilationUnits.isEmpty())
+	    return RefactoringStatus.createFatalErrorStatus("The selection contains no compilation units.");
+	return new RefactoringStatus();
+    }
+
+    @Override
+    public RefactoringStatus checkFinalConditions(IProgressMonitor pm) {
+	return new RefactoringStatus();
+    }
+
+    /**
+     * Calculates one {@link TextFileChange} per compilation unit using a pool
+     * of one thread per processor. Compilation units which are sorted already
+     * do not contribute a change.
+     *
+     * @see Refactoring#createChange(IProgressMonitor)
+     */
+    @Override
+    public Change createChange(IProgressMonitor pm) throws CoreException {
+	pm.beginTask("Calculating method orderings", this.compilationUnits.size());
+	final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	try {
+	    final List<Future<TextFileChange>> futures = new ArrayList<Future<TextFileChange>>();
+	    for (final ICompilationUnit cu : this.compilationUnits) {
+		futures.add(executor.submit(new Callable<TextFileChange>() {
+		    @Override
+		    public TextFileChange call() {
+			return createChange(cu);
+		    }
+		}));
+	    }
+	    final CompositeChange change = new CompositeChange(getName());
+	    for (final Future<TextFileChange> future : futures) {
+		final TextFileChange fileChange = await(future, pm);
+		if (fileChange != null)
+		    change.add(fileChange);
+		pm.worked(1);
+	    }
+	    return change;
+	} finally {
+	    executor.shutdownNow();
+	    pm.done();
+	}
+    }
+
+    private static TextFileChange await(Future<TextFileChange> future, IProgressMonitor pm) throws CoreException {
+	try {
+	    while (true) {
+		if (pm.isCanceled())
+		    throw new OperationCanceledException();
+		try {
+		    return future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (final TimeoutException e) {
+		    // poll for cancellation
+		}
+	    }
+	} catch (final InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new OperationCanceledException();
+	} catch (final ExecutionException e) {
+	    throw new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Sorting methods failed",
+		    e.getCause()));
+	}
+    }
+
+    /**
+     * Runs in a worker thread and therefore uses its own sorter.
+     *
+     * @param cu
+     * @return the change or null if no sorting is required
+     */
+    private static TextFileChange createChange(ICompilationUnit cu) {
+	final TextEdit edit = new CleanCodeMethodSorter(new PreferenceManager()).calculateEdit(cu);
+	if (edit == null)
+	    return null;
+	final TextFileChange change = new TextFileChange(cu.getElementName(), (IFile) cu.getResource());
+	change.setTextType("java");
+	change.setEdit(edit);
+	return change;
+    }
+
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.refactoring;
+
+import org.eclipse.ltk.ui.refactoring.RefactoringWizard;
+
+/**
+ * Shows the preview of a {@link SortMethodsRefactoring}. There is no user input
+ * page.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class SortMethodsWizard extends RefactoringWizard {
+
+    public SortMethodsWizard(SortMethodsRefactoring refactoring) {
+	super(refactoring, DIALOG_BASED_USER_INTERFACE | PREVIEW_EXPAND_FIRST_NODE);
+	setDefaultPageTitle(refactoring.getName());
+    }
+
+    @Override
+    protected void addUserInputPages() {
+	// no input required
+    }
+
+}
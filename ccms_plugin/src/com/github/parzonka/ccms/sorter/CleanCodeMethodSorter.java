@@ -16,20 +16,20 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.BodyDeclaration;
-import org.eclipse.jface.preference.PreferenceStore;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.text.edits.TextEdit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.parzonka.ccms.engine.CompilationUnitSorter;
 import com.github.parzonka.ccms.preferences.IPreferences;
-import com.github.parzonka.ccms.preferences.PreferenceManager;
 import com.github.parzonka.ccms.sorter.callgraph.ASTUtils;
 import com.github.parzonka.ccms.sorter.callgraph.CallGraphExtractor;
 import com.github.parzonka.ccms.sorter.callgraph.CallGraphNode;
@@ -40,6 +40,7 @@ import com.github.parzonka.ccms.sorter.cluster.ClusterGraphExtractor;
 import com.github.parzonka.ccms.sorter.cluster.ClusterNode;
 import com.github.parzonka.ccms.sorter.comparator.BodyDeclarationComparator;
 import com.github.parzonka.ccms.sorter.comparator.ComparatorBuilder;
+import com.github.parzonka.ccms.sorter.comparator.MemberCategoryOrder;
 import com.github.parzonka.ccms.sorter.comparator.Signature;
 import com.github.parzonka.ccms.sorter.comparator.StackableSignatureComparator;
 
@@ -62,25 +63,104 @@ public class CleanCodeMethodSorter implements IMethodSorter {
 
     /**
      * @param preferences
-     *            provides preferences used in this class instance.
+     *            provides preferences used in this class instance, e.g. a
+     *            {@link com.github.parzonka.ccms.preferences.PreferenceManager}
+     *            in the workbench.
      */
     public CleanCodeMethodSorter(IPreferences preferences) {
 	super();
 	this.preferences = preferences;
     }
 
+    @Override
+    public void sort(ICompilationUnit cu) {
+	final Comparator<BodyDeclaration> comparator = createComparator(ASTUtils.getAST(cu));
+	try {
+	    CompilationUnitSorter.sort(ASTUtils.AST_LEVEL, cu, null, comparator, 0, null);
+	} catch (final JavaModelException e) {
+	    throw new RuntimeException(e);
+	}
+    }
+
     /**
-     * Instantiation uses the User-configurable preferences stored in the
-     * Eclipse {@link PreferenceStore}.
+     * Calculates the edit sorting the given compilation unit without applying
+     * it. The AST is parsed from the current contents of the cu, so the edit
+     * has to be applied to that very contents.
+     *
+     * @param cu
+     * @return the edit or null if no sorting is required
      */
-    public CleanCodeMethodSorter() {
-	super();
-	this.preferences = new PreferenceManager();
+    @Override
+    public TextEdit calculateEdit(ICompilationUnit cu) {
+	try {
+	    final String source = cu.getSource();
+	    return calculateEdit((CompilationUnit) ASTUtils.getAST(cu), source, cu.getJavaProject().getOptions(true));
+	} catch (final JavaModelException e) {
+	    throw new RuntimeException(e);
+	}
     }
 
+    /**
+     * Calculates the edit sorting the given AST without applying it.
+     *
+     * @param unit
+     *            an AST with resolved bindings
+     * @param source
+     *            the source the AST was created from
+     * @param options
+     *            the formatter options used when generating the edit
+     * @return the edit or null if no sorting is required
+     */
     @Override
-    public void sort(ICompilationUnit cu) {
-	this.ast = ASTUtils.getAST(cu);
+    public TextEdit calculateEdit(CompilationUnit unit, String source, Map options) {
+	try {
+	    final Comparator<BodyDeclaration> comparator = createComparator(unit);
+	    return CompilationUnitSorter.sort(unit, source, options, comparator, null);
+	} finally {
+	    releaseAnalysis();
+	}
+    }
+
+    @Override
+    public BodyDeclaration findFirstUnsorted(CompilationUnit unit) {
+	try {
+	    return CompilationUnitSorter.findFirstUnsorted(unit, createComparator(unit));
+	} finally {
+	    releaseAnalysis();
+	}
+    }
+
+    @Override
+    public TextEdit calculateEditIfUnsorted(CompilationUnit unit, String source, Map options) {
+	try {
+	    final Comparator<BodyDeclaration> comparator = createComparator(unit);
+	    if (CompilationUnitSorter.findFirstUnsorted(unit, comparator) == null)
+		return null;
+	    return CompilationUnitSorter.sort(unit, source, options, comparator, null);
+	} finally {
+	    releaseAnalysis();
+	}
+    }
+
+    /**
+     * Drops the references to the AST and the results of its analysis, so they
+     * become unreachable even while this sorter is still referenced.
+     */
+    private void releaseAnalysis() {
+	this.ast = null;
+	this.callGraph = null;
+	this.knownSignatures = null;
+    }
+
+    /**
+     * Analyzes the given AST and creates the comparator which is passed to the
+     * sorting API.
+     *
+     * @param ast
+     * @return the comparator ordering the body declarations of the AST
+     */
+    private Comparator<BodyDeclaration> createComparator(ASTNode ast) {
+	this.ast = ast;
 	this.callGraph = createCallGraph();
 	this.knownSignatures = getKnownSignatures();
 
@@ -94,12 +174,7 @@ public class CleanCodeMethodSorter implements IMethodSorter {
 
 	final Comparator<Signature> signatureComparator = getSignatureComparator();
 
-	final Comparator<BodyDeclaration> comparator = getBodyDeclarationComparator(signatureComparator);
-	try {
-	    CompilationUnitSorter.sort(AST.JLS3, cu, null, comparator, 0, null);
-	} catch (final JavaModelException e) {
-	    throw new RuntimeException(e);
-	}
+	return getBodyDeclarationComparator(signatureComparator);
     }
 
     /**
@@ -203,7 +278,8 @@ public class CleanCodeMethodSorter implements IMethodSorter {
 	    finalMethodSignatureComparator = signatureComparator;
 	}
 	logFinalOrderingOfKnownSignatures(finalMethodSignatureComparator);
-	return new BodyDeclarationComparator(finalMethodSignatureComparator, this.knownSignatures);
+	return new BodyDeclarationComparator(finalMethodSignatureComparator, this.knownSignatures,
+		new MemberCategoryOrder(this.preferences.getMemberSortOrder()));
     }
 
     /**
@@ -221,14 +297,16 @@ public class CleanCodeMethodSorter implements IMethodSorter {
     }
 
     private void logFinalOrderingOfKnownSignatures(Comparator<Signature> comparator) {
-	logger.info("Final ordering of [{}] known signatures:", this.knownSignatures.size());
+	if (!logger.isDebugEnabled())
+	    return;
+	logger.debug("Final ordering of [{}] known signatures:", this.knownSignatures.size());
 	final List<Signature> orderedSignatures = new ArrayList<Signature>();
 	orderedSignatures.addAll(this.knownSignatures);
 	Collections.sort(orderedSignatures, comparator);
-	logger.info("Preferences: [{}]", this.preferences.toString());
+	logger.debug("Preferences: [{}]", this.preferences.toString());
 	int i = 0;
 	for (final Signature signature : orderedSignatures) {
-	    logger.info("[{}] {}", ++i, signature);
+	    logger.debug("[{}] {}", ++i, signature);
 	}
     }
 
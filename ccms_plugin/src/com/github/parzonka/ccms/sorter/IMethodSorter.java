@@ -8,7 +8,12 @@
  */
 package com.github.parzonka.ccms.sorter;
 
+import java.util.Map;
+
 import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.text.edits.TextEdit;
 
 /**
  *
@@ -24,4 +29,57 @@ public interface IMethodSorter {
      */
     public void sort(ICompilationUnit cu);
 
+    /**
+     * Calculates the edit sorting the methods in a compilation unit without
+     * applying it.
+     *
+     * @param cu
+     * @return the edit or null if no sorting is required
+     */
+    public TextEdit calculateEdit(ICompilationUnit cu);
+
+    /**
+     * Calculates the edit sorting the methods in an AST without applying it.
+     *
+     * @param unit
+     *            an AST with resolved bindings
+     * @param source
+     *            the source the AST was created from
+     * @param options
+     *            the formatter options used when generating the edit
+     * @return the edit or null if no sorting is required
+     * @throws IllegalStateException
+     *             if the AST contains a malformed declaration
+     */
+    public TextEdit calculateEdit(CompilationUnit unit, String source, Map options);
+
+    /**
+     * Checks whether the methods in an AST are sorted without calculating an
+     * edit.
+     *
+     * @param unit
+     *            an AST with resolved bindings
+     * @return the first member which is out of order or null if no sorting is
+     *         required
+     * @throws IllegalStateException
+     *             if the AST contains a malformed declaration
+     */
+    public BodyDeclaration findFirstUnsorted(CompilationUnit unit);
+
+    /**
+     * Checks whether the methods in an AST are sorted and calculates the edit
+     * only if they are not. The AST is analyzed once for both.
+     *
+     * @param unit
+     *            an AST with resolved bindings
+     * @param source
+     *            the source the AST was created from
+     * @param options
+     *            the formatter options used when generating the edit
+     * @return the edit or null if no member is out of order
+     * @throws IllegalStateException
+     *             if the AST contains a malformed declaration
+     */
+    public TextEdit calculateEditIfUnsorted(CompilationUnit unit, String source, Map options);
+
 }
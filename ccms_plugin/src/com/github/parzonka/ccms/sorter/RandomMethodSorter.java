@@ -13,15 +13,18 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
-import org.eclipse.jdt.core.util.CompilationUnitSorter;
+import org.eclipse.text.edits.TextEdit;
 
+import com.github.parzonka.ccms.engine.CompilationUnitSorter;
 import com.github.parzonka.ccms.sorter.callgraph.ASTUtils;
 import com.github.parzonka.ccms.sorter.callgraph.CallGraphExtractor;
 import com.github.parzonka.ccms.sorter.callgraph.CallGraphNode;
@@ -45,16 +48,44 @@ public class RandomMethodSorter implements IMethodSorter {
     public void sort(ICompilationUnit cu) {
 
 	try {
-	    CompilationUnitSorter.sort(3, cu, null, createComparator(cu), 0, null);
+	    CompilationUnitSorter.sort(ASTUtils.AST_LEVEL, cu, null, createComparator(ASTUtils.getAST(cu)), 0, null);
 	} catch (final JavaModelException e) {
 	    throw new RuntimeException(e);
 	}
 
     }
 
-    private Comparator<BodyDeclaration> createComparator(ICompilationUnit cu) {
+    @Override
+    public TextEdit calculateEdit(ICompilationUnit cu) {
+	try {
+	    final String source = cu.getSource();
+	    final CompilationUnit unit = (CompilationUnit) ASTUtils.getAST(cu);
+	    return calculateEdit(unit, source, cu.getJavaProject().getOptions(true));
+	} catch (final JavaModelException e) {
+	    throw new RuntimeException(e);
+	}
+    }
+
+    @Override
+    public TextEdit calculateEdit(CompilationUnit unit, String source, Map options) {
+	return CompilationUnitSorter.sort(unit, source, options, createComparator(unit), null);
+    }
+
+    @Override
+    public BodyDeclaration findFirstUnsorted(CompilationUnit unit) {
+	return CompilationUnitSorter.findFirstUnsorted(unit, createComparator(unit));
+    }
+
+    @Override
+    public TextEdit calculateEditIfUnsorted(CompilationUnit unit, String source, Map options) {
+	final Comparator<BodyDeclaration> comparator = createComparator(unit);
+	if (CompilationUnitSorter.findFirstUnsorted(unit, comparator) == null)
+	    return null;
+	return CompilationUnitSorter.sort(unit, source, options, comparator, null);
+    }
+
+    private Comparator<BodyDeclaration> createComparator(ASTNode ast) {
 
-	final ASTNode ast = ASTUtils.getAST(cu);
 	final List<CallGraphNode> callGraph = getCallGraph(ast);
 
 	final Comparator<Signature> methodSignatureComparator = ComparatorFactory.getRandomComparator(callGraph);
@@ -112,11 +143,7 @@ public class RandomMethodSorter implements IMethodSorter {
 	}
 
 	private int preserveRelativeOrder(BodyDeclaration bodyDeclaration1, BodyDeclaration bodyDeclaration2) {
-	    final int value1 = ((Integer) bodyDeclaration1.getProperty(CompilationUnitSorter.RELATIVE_ORDER))
-		    .intValue();
-	    final int value2 = ((Integer) bodyDeclaration2.getProperty(CompilationUnitSorter.RELATIVE_ORDER))
-		    .intValue();
-	    return value1 - value2;
+	    return bodyDeclaration1.getStartPosition() - bodyDeclaration2.getStartPosition();
 	}
 
     }
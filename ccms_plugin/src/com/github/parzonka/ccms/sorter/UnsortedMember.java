@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.sorter;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.AnnotationTypeMemberDeclaration;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.EnumConstantDeclaration;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+
+import com.github.parzonka.ccms.sorter.comparator.Signature;
+
+/**
+ * The first member of a file which is out of order, as found when checking
+ * whether files are sorted. Its string representation is the machine-readable
+ * line <code>&lt;path&gt;:&lt;line&gt;: unsorted: &lt;member&gt;</code>.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class UnsortedMember implements Comparable<UnsortedMember> {
+
+    private final String path;
+    private final int line;
+    private final String member;
+
+    public UnsortedMember(String path, int line, String member) {
+	super();
+	this.path = path;
+	this.line = line;
+	this.member = member;
+    }
+
+    /**
+     * @param path
+     *            the path of the file
+     * @param unit
+     *            the AST of the file
+     * @param bodyDeclaration
+     *            the member which is out of order
+     * @return the unsorted member
+     */
+    public static UnsortedMember create(String path, CompilationUnit unit, BodyDeclaration bodyDeclaration) {
+	return new UnsortedMember(path, unit.getLineNumber(bodyDeclaration.getStartPosition()),
+		describe(bodyDeclaration));
+    }
+
+    private static String describe(BodyDeclaration bodyDeclaration) {
+	switch (bodyDeclaration.getNodeType()) {
+	case BodyDeclaration.METHOD_DECLARATION:
+	    return new Signature((MethodDeclaration) bodyDeclaration).toString();
+	case BodyDeclaration.FIELD_DECLARATION: {
+	    @SuppressWarnings("unchecked")
+	    final List<VariableDeclarationFragment> fragments = ((FieldDeclaration) bodyDeclaration).fragments();
+	    return fragments.get(0).getName().getIdentifier();
+	}
+	case BodyDeclaration.TYPE_DECLARATION:
+	case BodyDeclaration.ENUM_DECLARATION:
+	case BodyDeclaration.ANNOTATION_TYPE_DECLARATION:
+	    return ((AbstractTypeDeclaration) bodyDeclaration).getName().getIdentifier();
+	case BodyDeclaration.ENUM_CONSTANT_DECLARATION:
+	    return ((EnumConstantDeclaration) bodyDeclaration).getName().getIdentifier();
+	case BodyDeclaration.ANNOTATION_TYPE_MEMBER_DECLARATION:
+	    return ((AnnotationTypeMemberDeclaration) bodyDeclaration).getName().getIdentifier() + "()";
+	default:
+	    return "initializer";
+	}
+    }
+
+    public String getPath() {
+	return this.path;
+    }
+
+    public int getLine() {
+	return this.line;
+    }
+
+    public String getMember() {
+	return this.member;
+    }
+
+    @Override
+    public int compareTo(UnsortedMember other) {
+	final int compare = this.path.compareTo(other.path);
+	if (compare != 0)
+	    return compare;
+	return this.line - other.line;
+    }
+
+    @Override
+    public String toString() {
+	return this.path + ":" + this.line + ": unsorted: " + this.member;
+    }
+
+}
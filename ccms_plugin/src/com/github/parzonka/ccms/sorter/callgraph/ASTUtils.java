@@ -8,35 +8,50 @@
  */
 package com.github.parzonka.ccms.sorter.callgraph;
 
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.core.ICompilationUnit;
-import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.compiler.IProblem;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTParser;
-import org.eclipse.jdt.internal.core.CompilationUnit;
-import org.eclipse.jdt.internal.ui.actions.SelectionConverter;
-import org.eclipse.jdt.internal.ui.javaeditor.CompilationUnitEditor;
-import org.eclipse.ui.IEditorPart;
-import org.eclipse.ui.IWorkbench;
-import org.eclipse.ui.IWorkbenchPage;
-import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.jdt.core.dom.ASTRequestor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
 
 /**
- * Some utilities for working with compilation units, ASTs and selected
- * ASTNodes.
+ * Some utilities for creating the ASTs of compilation units. Does not depend
+ * on the workbench, see {@link com.github.parzonka.ccms.handler.EditorUtils}
+ * for the editor related utilities.
  *
  * @author Mateusz Parzonka
  *
  */
 public class ASTUtils {
 
+    /**
+     * IProblem.IsClassPathCorrectWithReferencingType, which JDT Core 3.22 and
+     * later report instead of {@link IProblem#IsClassPathCorrect} if the
+     * missing type is referenced by a known type.
+     */
+    private static final int IS_CLASS_PATH_CORRECT_WITH_REFERENCING_TYPE = IProblem.TypeRelated + 347;
+
+    /**
+     * The AST level all ASTs are created and rewritten with. The latest level
+     * represents all constructs of the supported source levels, e.g. lambdas,
+     * which older levels mark as malformed.
+     */
+    public static final int AST_LEVEL = AST.getJLSLatest();
+
     private ASTUtils() {
 	// not meant to be instantiated
     }
 
     public static ASTNode getAST(ICompilationUnit compilationUnit, IJavaProject project) {
-	final ASTParser parser = ASTParser.newParser(AST.JLS3);
+	final ASTParser parser = ASTParser.newParser(AST_LEVEL);
 	parser.setKind(ASTParser.K_COMPILATION_UNIT);
 	parser.setSource(compilationUnit);
 	parser.setResolveBindings(true);
@@ -53,7 +68,7 @@ public class ASTUtils {
      * @return
      */
     public static ASTNode getAST(ICompilationUnit compilationUnit) {
-	final ASTParser parser = ASTParser.newParser(AST.JLS3);
+	final ASTParser parser = ASTParser.newParser(AST_LEVEL);
 	parser.setKind(ASTParser.K_COMPILATION_UNIT);
 	parser.setSource(compilationUnit);
 	parser.setResolveBindings(true);
@@ -62,27 +77,149 @@ public class ASTUtils {
     }
 
     /**
-     * Returns a ICompilationUnit when the active editor in the workbench is an
-     * instance of CompilationUnitEditor. Returns null otherwise.
+     * Returns an ASTNode for the given source, resolving bindings as if the
+     * source were the contents of the given ICompilationUnit. Allows parsing a
+     * snapshot of a cu which is concurrently modified.
+     *
+     * @param source
+     * @param compilationUnit
+     * @param monitor
+     *            the progress monitor used to cancel parsing, or null
+     * @return
+     */
+    public static ASTNode getAST(char[] source, ICompilationUnit compilationUnit, IProgressMonitor monitor) {
+	final ASTParser parser = ASTParser.newParser(AST_LEVEL);
+	parser.setKind(ASTParser.K_COMPILATION_UNIT);
+	parser.setSource(source);
+	parser.setUnitName(compilationUnit.getPath().toString());
+	parser.setProject(compilationUnit.getJavaProject());
+	parser.setResolveBindings(true);
+	parser.setBindingsRecovery(false);
+	return parser.createAST(monitor);
+    }
+
+    /**
+     * Creates the ASTs of the given compilation units sharing one binding
+     * environment, passing each AST to the requestor as soon as it is created.
+     * All compilation units have to belong to the given project.
+     *
+     * @param compilationUnits
+     * @param project
+     * @param requestor
+     * @param monitor
+     *            the progress monitor used to cancel parsing, or null
+     */
+    public static void createASTs(ICompilationUnit[] compilationUnits, IJavaProject project,
+	    ASTRequestor requestor, IProgressMonitor monitor) {
+	final ASTParser parser = ASTParser.newParser(AST_LEVEL);
+	parser.setKind(ASTParser.K_COMPILATION_UNIT);
+	parser.setProject(project);
+	parser.setResolveBindings(true);
+	parser.setBindingsRecovery(false);
+	parser.createASTs(compilationUnits, new String[0], requestor, monitor);
+    }
+
+    /**
+     * Creates the ASTs of the given source files sharing one binding
+     * environment, passing each AST to the requestor as soon as it is created.
+     * Resolves the bindings against the given class and source path instead of
+     * a Java project, so it runs without the workspace.
+     *
+     * @param sourceFilePaths
+     *            the absolute paths of the source files
+     * @param encodings
+     *            the encodings of the source files, or null for the platform
+     *            encoding
+     * @param classpath
+     *            the jars and class folders the sources are compiled against
+     * @param sourcepath
+     *            the source roots the sources are compiled against
+     * @param options
+     *            the compiler options, e.g. the source level
+     * @param requestor
+     * @param monitor
+     *            the progress monitor used to cancel parsing, or null
+     */
+    public static void createASTs(String[] sourceFilePaths, String[] encodings, String[] classpath,
+	    String[] sourcepath, Map<String, String> options, FileASTRequestor requestor, IProgressMonitor monitor) {
+	final ASTParser parser = ASTParser.newParser(AST_LEVEL);
+	parser.setKind(ASTParser.K_COMPILATION_UNIT);
+	parser.setCompilerOptions(options);
+	parser.setEnvironment(classpath, sourcepath, null, true);
+	parser.setResolveBindings(true);
+	parser.setBindingsRecovery(false);
+	parser.createASTs(sourceFilePaths, encodings, new String[0], requestor, monitor);
+    }
+
+    /**
+     * Creates the AST of a source which is not read from a file, e.g. the
+     * contents of an editor buffer, resolving the bindings against the given
+     * class and source path.
+     *
+     * @param source
+     * @param unitName
+     *            the name of the compilation unit, e.g. <code>Foo.java</code>
+     * @param classpath
+     *            the jars and class folders the source is compiled against
+     * @param sourcepath
+     *            the source roots the source is compiled against
+     * @param options
+     *            the compiler options, e.g. the source level
+     * @return the AST
+     */
+    public static CompilationUnit createAST(char[] source, String unitName, String[] classpath,
+	    String[] sourcepath, Map<String, String> options) {
+	final ASTParser parser = ASTParser.newParser(AST_LEVEL);
+	parser.setKind(ASTParser.K_COMPILATION_UNIT);
+	parser.setCompilerOptions(options);
+	parser.setEnvironment(classpath, sourcepath, null, true);
+	parser.setUnitName(unitName);
+	parser.setSource(source);
+	parser.setResolveBindings(true);
+	parser.setBindingsRecovery(false);
+	return (CompilationUnit) parser.createAST(null);
+    }
+
+    /**
+     * Checks whether an AST of a working copy, e.g. the one shared by the Java
+     * editor, was built from the given source. The shared AST is built from
+     * the buffer of the working copy when it is reconciled. It matches the
+     * source if the working copy has not been modified since, which makes it
+     * consistent, and its buffer still holds the source. Matching the length
+     * of the AST is not enough, as a stale AST may have the same length.
+     *
+     * @param ast
+     * @param workingCopy
+     * @param source
+     *            the source the edits calculated from the AST are applied to
+     * @return true if the offsets in the AST are valid in the source
+     */
+    public static boolean isCreatedFrom(CompilationUnit ast, ICompilationUnit workingCopy, String source) {
+	if (source == null || ast.getTypeRoot() == null || !ast.getTypeRoot().equals(workingCopy))
+	    return false;
+	try {
+	    return workingCopy.isConsistent() && source.equals(workingCopy.getSource());
+	} catch (final JavaModelException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Looks for a type which is referenced by the classpath but missing from
+     * it, e.g. <code>java.lang.Object</code> if the JDK cannot be read. The
+     * bindings of such an AST are incomplete, so the invocations involving the
+     * missing types would be silently left out of the call graph.
      *
-     * @param workbenchWindow
-     * @return the cu in the editor
+     * @param ast
+     * @return the first problem reporting an incomplete classpath, or null
      */
-    public static ICompilationUnit getCompilationUnit(IWorkbenchWindow workbenchWindow) {
-	CompilationUnitEditor cuEditor;
-	final IWorkbench workbench = workbenchWindow.getWorkbench();
-	final IWorkbenchWindow activeWorkbenchWindow = workbench.getActiveWorkbenchWindow();
-	final IWorkbenchPage activePage = activeWorkbenchWindow.getActivePage();
-	final IEditorPart activeEditor = activePage.getActiveEditor();
-	if (activeEditor instanceof CompilationUnitEditor)
-	    cuEditor = (CompilationUnitEditor) activeEditor;
-	else
-	    return null;
-	final IJavaElement input = SelectionConverter.getInput(cuEditor);
-	if (input instanceof CompilationUnit) {
-	    return (CompilationUnit) input;
-	} else
-	    return null;
+    public static IProblem findClassPathProblem(CompilationUnit ast) {
+	for (final IProblem problem : ast.getProblems()) {
+	    if (problem.getID() == IProblem.IsClassPathCorrect
+		    || problem.getID() == IS_CLASS_PATH_CORRECT_WITH_REFERENCING_TYPE)
+		return problem;
+	}
+	return null;
     }
 
 }
@@ -122,9 +122,11 @@ public class CallGraphExtractor extends TopLevelASTVisitor {
      * @return
      */
     public Collection<CallGraphNode> getCallGraph() {
-	logger.info("CallGraphExtractor returns:");
-	for (final CallGraphNode callGraphNode : this.callGraphNodes.values()) {
-	    logger.info("Node: {}", callGraphNode.toString());
+	if (logger.isDebugEnabled()) {
+	    logger.debug("CallGraphExtractor returns:");
+	    for (final CallGraphNode callGraphNode : this.callGraphNodes.values()) {
+		logger.debug("Node: {}", callGraphNode.toString());
+	    }
 	}
 	return this.callGraphNodes.values();
     }
@@ -20,9 +20,6 @@ import org.eclipse.jdt.core.dom.Initializer;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.Modifier;
 import org.eclipse.jdt.core.util.CompilationUnitSorter;
-import org.eclipse.jdt.internal.corext.codemanipulation.SortMembersOperation.DefaultJavaElementComparator;
-import org.eclipse.jdt.internal.ui.JavaPlugin;
-import org.eclipse.jdt.internal.ui.preferences.MembersOrderPreferenceCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,7 +29,9 @@ import org.slf4j.LoggerFactory;
  * pre-calculated and passed at instantiation. All other BodyDeclarations are
  * tried to be sorted preserving their old relative order.
  * <p>
- * Based on {@link DefaultJavaElementComparator}.
+ * Based on
+ * <code>org.eclipse.jdt.internal.corext.codemanipulation.SortMembersOperation.DefaultJavaElementComparator</code>
+ * .
  *
  * @author Mateusz Parzonka
  */
@@ -40,13 +39,21 @@ public class BodyDeclarationComparator implements Comparator<BodyDeclaration> {
 
     final private static Logger logger = LoggerFactory.getLogger(BodyDeclarationComparator.class);
 
-    private final MembersOrderPreferenceCache fMemberOrderCache;
+    private final MemberCategoryOrder memberCategoryOrder;
     private final Comparator<Signature> methodDeclarationComparator;
     private final Set<Signature> knownMethodSignatures;
 
+    /**
+     * @param methodDeclarationComparator
+     *            orders the known method signatures
+     * @param knownMethodSignatures
+     * @param memberCategoryOrder
+     *            orders the members of different categories, e.g. fields
+     *            before methods
+     */
     public BodyDeclarationComparator(Comparator<Signature> methodDeclarationComparator,
-	    Set<Signature> knownMethodSignatures) {
-	this.fMemberOrderCache = JavaPlugin.getDefault().getMemberOrderPreferenceCache();
+	    Set<Signature> knownMethodSignatures, MemberCategoryOrder memberCategoryOrder) {
+	this.memberCategoryOrder = memberCategoryOrder;
 	this.methodDeclarationComparator = methodDeclarationComparator;
 	this.knownMethodSignatures = knownMethodSignatures;
     }
@@ -127,9 +134,7 @@ public class BodyDeclarationComparator implements Comparator<BodyDeclaration> {
     }
 
     private int preserveRelativeOrder(BodyDeclaration bodyDeclaration1, BodyDeclaration bodyDeclaration2) {
-	final int value1 = ((Integer) bodyDeclaration1.getProperty(CompilationUnitSorter.RELATIVE_ORDER)).intValue();
-	final int value2 = ((Integer) bodyDeclaration2.getProperty(CompilationUnitSorter.RELATIVE_ORDER)).intValue();
-	return value1 - value2;
+	return bodyDeclaration1.getStartPosition() - bodyDeclaration2.getStartPosition();
     }
 
     private int category(BodyDeclaration bodyDeclaration) {
@@ -137,35 +142,35 @@ public class BodyDeclarationComparator implements Comparator<BodyDeclaration> {
 	case ASTNode.METHOD_DECLARATION: {
 	    final MethodDeclaration method = (MethodDeclaration) bodyDeclaration;
 	    if (method.isConstructor()) {
-		return getMemberCategory(MembersOrderPreferenceCache.CONSTRUCTORS_INDEX);
+		return getMemberCategory(MemberCategoryOrder.CONSTRUCTORS_INDEX);
 	    } else
-		return getMemberCategory(MembersOrderPreferenceCache.METHOD_INDEX);
+		return getMemberCategory(MemberCategoryOrder.METHOD_INDEX);
 	}
 	case ASTNode.FIELD_DECLARATION: {
-	    return getMemberCategory(MembersOrderPreferenceCache.FIELDS_INDEX);
+	    return getMemberCategory(MemberCategoryOrder.FIELDS_INDEX);
 	}
 	case ASTNode.INITIALIZER: {
 	    final int flags = ((Initializer) bodyDeclaration).getModifiers();
 	    if (Modifier.isStatic(flags))
-		return getMemberCategory(MembersOrderPreferenceCache.STATIC_INIT_INDEX);
+		return getMemberCategory(MemberCategoryOrder.STATIC_INIT_INDEX);
 	    else
-		return getMemberCategory(MembersOrderPreferenceCache.INIT_INDEX);
+		return getMemberCategory(MemberCategoryOrder.INIT_INDEX);
 	}
 	case ASTNode.TYPE_DECLARATION:
 	case ASTNode.ENUM_DECLARATION:
 	case ASTNode.ANNOTATION_TYPE_DECLARATION:
-	    return getMemberCategory(MembersOrderPreferenceCache.TYPE_INDEX);
+	    return getMemberCategory(MemberCategoryOrder.TYPE_INDEX);
 	case ASTNode.ENUM_CONSTANT_DECLARATION:
-	    return getMemberCategory(MembersOrderPreferenceCache.ENUM_CONSTANTS_INDEX);
+	    return getMemberCategory(MemberCategoryOrder.ENUM_CONSTANTS_INDEX);
 	case ASTNode.ANNOTATION_TYPE_MEMBER_DECLARATION:
-	    return getMemberCategory(MembersOrderPreferenceCache.METHOD_INDEX);
+	    return getMemberCategory(MemberCategoryOrder.METHOD_INDEX);
 
 	}
 	throw new IllegalStateException();
     }
 
     private int getMemberCategory(int kind) {
-	return this.fMemberOrderCache.getCategoryIndex(kind);
+	return this.memberCategoryOrder.getCategoryIndex(kind);
     }
 
     @Override
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.sorter.comparator;
+
+/**
+ * The order of the categories of members (types, fields, initializers,
+ * constructors and methods) which is kept when sorting. Created from the
+ * format of the JDT preference "Members Sort Order", e.g.
+ * <code>T,SF,SI,SM,F,I,C,M</code>, so it can be configured without the JDT UI.
+ * Enum constants always come first.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class MemberCategoryOrder {
+
+    /**
+     * The default of the JDT preference "Members Sort Order".
+     */
+    public static final String DEFAULT_ORDER = "T,SF,SI,SM,F,I,C,M";
+
+    public static final int TYPE_INDEX = 0;
+    public static final int CONSTRUCTORS_INDEX = 1;
+    public static final int METHOD_INDEX = 2;
+    public static final int FIELDS_INDEX = 3;
+    public static final int INIT_INDEX = 4;
+    public static final int STATIC_FIELDS_INDEX = 5;
+    public static final int STATIC_INIT_INDEX = 6;
+    public static final int STATIC_METHODS_INDEX = 7;
+    public static final int ENUM_CONSTANTS_INDEX = 8;
+
+    private static final String[] KEYS = { "T", "C", "M", "F", "I", "SF", "SI", "SM" };
+
+    private final int[] categoryIndexes = new int[ENUM_CONSTANTS_INDEX + 1];
+
+    /**
+     * @param order
+     *            comma-separated keys of the categories. Categories which are
+     *            not contained come last.
+     */
+    public MemberCategoryOrder(String order) {
+	for (int kind = 0; kind < KEYS.length; kind++)
+	    this.categoryIndexes[kind] = Integer.MAX_VALUE;
+	this.categoryIndexes[ENUM_CONSTANTS_INDEX] = 0;
+	final String[] keys = order.split(",");
+	for (int i = 0; i < keys.length; i++) {
+	    final int kind = getKind(keys[i].trim());
+	    if (kind >= 0)
+		this.categoryIndexes[kind] = i + 1;
+	}
+    }
+
+    private static int getKind(String key) {
+	for (int kind = 0; kind < KEYS.length; kind++) {
+	    if (KEYS[kind].equals(key))
+		return kind;
+	}
+	return -1;
+    }
+
+    /**
+     * @param kind
+     *            one of the <code>_INDEX</code> constants
+     * @return the position of the category of the given kind. Members of
+     *         categories with lower positions come first.
+     */
+    public int getCategoryIndex(int kind) {
+	return this.categoryIndexes[kind];
+    }
+
+}
@@ -15,7 +15,6 @@ import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.MethodInvocation;
 import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
-import org.eclipse.jdt.internal.corext.dom.ASTNodes;
 
 /**
  * Models a method signature. Signature can be created from
@@ -62,7 +61,7 @@ public class Signature implements Comparable<Signature> {
 
 	for (int i = 0; i < parameters.size(); i++) {
 	    // TODO ugly idiom
-	    sb.append(ASTNodes.asString(parameters.get(i).getType()).split("<")[0]);
+	    sb.append(parameters.get(i).getType().toString().split("<")[0]);
 	    if (i < parameters.size() - 1) {
 		sb.append(", ");
 	    }
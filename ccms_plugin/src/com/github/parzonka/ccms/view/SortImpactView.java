@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2011 Mateusz Parzonka
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+package com.github.parzonka.ccms.view;
+
+import java.util.List;
+
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.ui.part.ViewPart;
+
+import com.github.parzonka.ccms.batch.SortImpact;
+
+/**
+ * Shows the impact of sorting the files of a dry run: the members which would
+ * be moved, the size of the resulting diff and the time spent on the analysis.
+ * Files with the largest impact are listed first.
+ *
+ * @author Mateusz Parzonka
+ *
+ */
+public class SortImpactView extends ViewPart {
+
+    public static final String ID = "com.github.parzonka.ccms.view.sortImpactView";
+
+    private TableViewer viewer;
+
+    @Override
+    public void createPartControl(Composite parent) {
+	this.viewer = new TableViewer(parent, SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL | SWT.FULL_SELECTION);
+	final Table table = this.viewer.getTable();
+	table.setHeaderVisible(true);
+	table.setLinesVisible(true);
+
+	addColumn("File", 300, new ColumnLabelProvider() {
+	    @Override
+	    public String getText(Object element) {
+		return ((SortImpact) element).getCompilationUnit().getPath().toString();
+	    }
+	});
+	addColumn("Moved members", 110, new ColumnLabelProvider() {
+	    @Override
+	    public String getText(Object element) {
+		return String.valueOf(((SortImpact) element).getMovedMembers());
+	    }
+	});
+	addColumn("Moved lines", 90, new ColumnLabelProvider() {
+	    @Override
+	    public String getText(Object element) {
+		return String.valueOf(((SortImpact) element).getMovedLines());
+	    }
+	});
+	addColumn("Analysis (ms)", 100, new ColumnLabelProvider() {
+	    @Override
+	    public String getText(Object element) {
+		final SortImpact impact = (SortImpact) element;
+		return impact.isCached() ? "precomputed" : String.valueOf(impact.getAnalysisMillis());
+	    }
+	});
+
+	this.viewer.setContentProvider(new ArrayContentProvider());
+	this.viewer.setComparator(new ViewerComparator() {
+	    @Override
+	    public int compare(Viewer viewer, Object e1, Object e2) {
+		return ((SortImpact) e2).getMovedLines() - ((SortImpact) e1).getMovedLines();
+	    }
+	});
+	setContentDescription("Run a dry run of sorting methods to see its impact.");
+    }
+
+    private void addColumn(String title, int width, ColumnLabelProvider labelProvider) {
+	final TableViewerColumn column = new TableViewerColumn(this.viewer, SWT.NONE);
+	column.getColumn().setText(title);
+	column.getColumn().setWidth(width);
+	column.setLabelProvider(labelProvider);
+    }
+
+    /**
+     * Shows the impacts of a dry run. Files which would not change are
+     * summarized only.
+     *
+     * @param impacts
+     */
+    public void setImpacts(List<SortImpact> impacts) {
+	int changedFiles = 0;
+	int movedMembers = 0;
+	int movedLines = 0;
+	for (final SortImpact impact : impacts) {
+	    if (impact.isChanged()) {
+		changedFiles++;
+		movedMembers += impact.getMovedMembers();
+		movedLines += impact.getMovedLines();
+	    }
+	}
+	final SortImpact[] changed = new SortImpact[changedFiles];
+	int i = 0;
+	for (final SortImpact impact : impacts) {
+	    if (impact.isChanged())
+		changed[i++] = impact;
+	}
+	this.viewer.setInput(changed);
+	setContentDescription(changedFiles + " of " + impacts.size() + " files would change, " + movedMembers
+		+ " members and " + movedLines + " lines would be moved.");
+    }
+
+    @Override
+    public void setFocus() {
+	this.viewer.getControl().setFocus();
+    }
+
+}